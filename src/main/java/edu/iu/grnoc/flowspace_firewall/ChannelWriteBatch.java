@@ -0,0 +1,178 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.openflow.protocol.OFMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Outbound queue for a controller channel.  Messages sent while
+ * inside a WriteTrain are written to the channel as one list when
+ * the train ends, or earlier once the queued bytes pass the limit.
+ * Outside of a train every message is written right away.
+ * Everything not yet on the wire (queued here or still in the netty
+ * write buffer) is counted, once that passes the queue limits or the
+ * channel stops being writable the batch reports it is saturated so
+ * callers can shed messages they can live without.
+ * @author aragusa
+ *
+ */
+public class ChannelWriteBatch implements WriteTrain.Batch {
+
+	public static final int DEFAULT_MAX_BATCH_BYTES = 65536;
+	public static final int DEFAULT_MAX_QUEUED_BYTES = 1048576;
+	public static final int DEFAULT_MAX_QUEUED_MESSAGES = 1000;
+
+	private static final Logger log = LoggerFactory.getLogger(ChannelWriteBatch.class);
+
+	private final Channel channel;
+	private final ConcurrentLinkedQueue<OFMessage> pending;
+	private final AtomicInteger pendingBytes;
+	private final int maxBatchBytes;
+	//queued or written but not yet sent
+	private final AtomicInteger unsentBytes;
+	private final AtomicInteger unsentMessages;
+	private volatile int maxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
+	private volatile int maxQueuedMessages = DEFAULT_MAX_QUEUED_MESSAGES;
+
+	//batch metrics, only updated while holding the flush lock
+	private long batches = 0;
+	private long messages = 0;
+	private int maxBatch = 0;
+
+	public ChannelWriteBatch(Channel channel){
+		this(channel, DEFAULT_MAX_BATCH_BYTES);
+	}
+
+	public ChannelWriteBatch(Channel channel, int maxBatchBytes){
+		this.channel = channel;
+		this.pending = new ConcurrentLinkedQueue<OFMessage>();
+		this.pendingBytes = new AtomicInteger(0);
+		this.maxBatchBytes = maxBatchBytes;
+		this.unsentBytes = new AtomicInteger(0);
+		this.unsentMessages = new AtomicInteger(0);
+	}
+
+	public void write(OFMessage msg){
+		this.unsentBytes.addAndGet(msg.getLengthU());
+		this.unsentMessages.incrementAndGet();
+		this.pendingBytes.addAndGet(msg.getLengthU());
+		this.pending.add(msg);
+		WriteTrain.written(this);
+		if(this.pendingBytes.get() >= this.maxBatchBytes){
+			this.flush();
+		}
+	}
+
+	/**
+	 * writes everything queued to the channel as one list
+	 */
+	public synchronized void flush(){
+		if(this.pending.isEmpty()){
+			return;
+		}
+		List<OFMessage> batch = new ArrayList<OFMessage>();
+		int batchBytes = 0;
+		OFMessage msg;
+		while((msg = this.pending.poll()) != null){
+			batch.add(msg);
+			batchBytes += msg.getLengthU();
+		}
+		this.pendingBytes.addAndGet(-batchBytes);
+		if(!this.channel.isConnected()){
+			log.error("Channel is not connected dropping " + batch.size() + " messages");
+			this.sent(batch.size(), batchBytes);
+			return;
+		}
+		final int sentMessages = batch.size();
+		final int sentBytes = batchBytes;
+		this.channel.write(batch).addListener(new ChannelFutureListener(){
+			@Override
+			public void operationComplete(ChannelFuture future){
+				//failed writes are gone from the buffer too
+				sent(sentMessages, sentBytes);
+			}
+		});
+
+		this.batches++;
+		this.messages += batch.size();
+		if(batch.size() > this.maxBatch){
+			this.maxBatch = batch.size();
+		}
+	}
+
+	private void sent(int messages, int bytes){
+		this.unsentMessages.addAndGet(-messages);
+		this.unsentBytes.addAndGet(-bytes);
+	}
+
+	/**
+	 * true when the controller is not keeping up, either netty has
+	 * stopped accepting writes or the unsent messages are over the limits
+	 * @return boolean
+	 */
+	public boolean isSaturated(){
+		return !this.channel.isWritable()
+				|| this.unsentBytes.get() >= this.maxQueuedBytes
+				|| this.unsentMessages.get() >= this.maxQueuedMessages;
+	}
+
+	public void setQueueLimits(int maxQueuedBytes, int maxQueuedMessages){
+		this.maxQueuedBytes = maxQueuedBytes;
+		this.maxQueuedMessages = maxQueuedMessages;
+	}
+
+	public int getMaxQueuedBytes(){
+		return this.maxQueuedBytes;
+	}
+
+	public int getMaxQueuedMessages(){
+		return this.maxQueuedMessages;
+	}
+
+	public int getUnsentBytes(){
+		return this.unsentBytes.get();
+	}
+
+	public int getUnsentMessages(){
+		return this.unsentMessages.get();
+	}
+
+	public int getPendingBytes(){
+		return this.pendingBytes.get();
+	}
+
+	public synchronized long getBatchCount(){
+		return this.batches;
+	}
+
+	public synchronized long getMessageCount(){
+		return this.messages;
+	}
+
+	public synchronized int getMaxBatch(){
+		return this.maxBatch;
+	}
+}
@@ -20,7 +20,9 @@ import java.io.IOException;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 
 import javax.xml.XMLConstants;
@@ -57,31 +59,111 @@ public final class ConfigParser {
 	//the logger
 	private static final Logger log = LoggerFactory.getLogger(ConfigParser.class);
 
+	/**
+	 * a range of vlans claimed by a slice on a given switch port
+	 */
+	private static final class ClaimedRange implements Comparable<ClaimedRange>{
+		final short start;
+		final short end;
+		final String sliceName;
+		
+		ClaimedRange(short start, short end, String sliceName){
+			this.start = start;
+			this.end = end;
+			this.sliceName = sliceName;
+		}
+		
+		public int compareTo(ClaimedRange other){
+			return this.start - other.start;
+		}
+	}
+	
+	/**
+	 * describes an overlapping vlan range for the conflict log
+	 * @param start
+	 * @param end
+	 * @return String
+	 */
+	static String describeVlans(short start, short end){
+		if(start == VLANRange.UNTAGGED){
+			return "untagged";
+		}
+		if(start == end){
+			return "vlan " + start;
+		}
+		return "vlans " + start + "-" + end;
+	}
+	
+	/**
+	 * verifies that no two slices claim the same vlan on the same switch port
+	 * builds an index of claimed vlan intervals per (switch, port) and sweeps
+	 * each port's sorted intervals once, logging every conflict it finds
+	 * @param slices
+	 * @return true if there are no overlaps
+	 */
 	private static boolean isValidConfig(List<HashMap<Long, Slicer>> slices){
 		
 		if(slices.size() == 0){
 			return false;
 		}
 		
+		//dpid -> port name -> every range claimed on that port
+		HashMap<Long, HashMap<String, List<ClaimedRange>>> index = new HashMap<Long, HashMap<String, List<ClaimedRange>>>();
 		for(HashMap<Long, Slicer> slice : slices){
 			for(Long dpid : slice.keySet()){
 				Slicer config = slice.get(dpid);
-				for(HashMap<Long, Slicer> otherSlice : slices){
-					if(otherSlice.containsKey(dpid)){
-						Slicer otherConfig = otherSlice.get(dpid);
-						if(otherConfig.getSliceName() != config.getSliceName()){
-							if(config.hasOverlap(otherConfig)){
-								log.warn("Overlap detected between slice "+config.getSliceName()+" and slice "
-								+otherConfig.getSliceName()+" will not load this configuration");
-								return false;
-							}
+				HashMap<String, List<ClaimedRange>> ports = index.get(dpid);
+				if(ports == null){
+					ports = new HashMap<String, List<ClaimedRange>>();
+					index.put(dpid, ports);
+				}
+				for(PortConfig pConfig : config.getPortConfigs()){
+					List<ClaimedRange> claimed = ports.get(pConfig.getPortName());
+					if(claimed == null){
+						claimed = new ArrayList<ClaimedRange>();
+						ports.put(pConfig.getPortName(), claimed);
+					}
+					for(short[] range : pConfig.getVlanRange().getRanges()){
+						claimed.add(new ClaimedRange(range[0], range[1], config.getSliceName()));
+					}
+					//untagged is not part of getRanges so claim it on its own
+					if(pConfig.getVlanRange().getVlanAvail(VLANRange.UNTAGGED)){
+						claimed.add(new ClaimedRange(VLANRange.UNTAGGED, VLANRange.UNTAGGED, config.getSliceName()));
+					}
+				}
+			}
+		}
+		
+		boolean valid = true;
+		for(Long dpid : index.keySet()){
+			HashMap<String, List<ClaimedRange>> ports = index.get(dpid);
+			for(String portName : ports.keySet()){
+				List<ClaimedRange> claimed = ports.get(portName);
+				Collections.sort(claimed);
+				//ranges that started earlier and may still overlap the current one
+				List<ClaimedRange> active = new ArrayList<ClaimedRange>();
+				for(ClaimedRange range : claimed){
+					Iterator<ClaimedRange> it = active.iterator();
+					while(it.hasNext()){
+						ClaimedRange other = it.next();
+						if(other.end < range.start){
+							it.remove();
+						}else if(!other.sliceName.equals(range.sliceName)){
+							log.warn("Overlap detected between slice " + other.sliceName + " and slice " + range.sliceName
+									+ " on switch " + HexString.toHexString(dpid) + " port " + portName + " "
+									+ describeVlans(range.start, (short)Math.min(range.end, other.end)));
+							valid = false;
 						}
 					}
+					active.add(range);
 				}
 			}
 		}
 		
-		return true;
+		if(!valid){
+			log.warn("Overlapping flowspace detected, will not load this configuration");
+		}
+		return valid;
 	}
 	
 	//the only method we need here
@@ -176,6 +258,41 @@ public final class ConfigParser {
 	        					do_timeouts = Boolean.parseBoolean(switchConfig.getAttributes().getNamedItem("do_timeouts").getTextContent());
 	        				}
 	        				slicer.setDoTimeouts(do_timeouts);
+	        				Node flow_burst = switchConfig.getAttributes().getNamedItem("flow_burst");
+	        				if(flow_burst != null){
+	        					slicer.setFlowBurst(Integer.parseInt(flow_burst.getTextContent()));
+	        				}
+	        				Node packet_in_burst = switchConfig.getAttributes().getNamedItem("packet_in_burst");
+	        				if(packet_in_burst != null){
+	        					slicer.setPacketInBurst(Integer.parseInt(packet_in_burst.getTextContent()));
+	        				}
+	        				Node packet_in_sample_rate = switchConfig.getAttributes().getNamedItem("packet_in_sample_rate");
+	        				if(packet_in_sample_rate != null){
+	        					slicer.setPacketInSampleRate(Integer.parseInt(packet_in_sample_rate.getTextContent()));
+	        				}
+	        				Node packet_in_disable_seconds = switchConfig.getAttributes().getNamedItem("packet_in_disable_seconds");
+	        				if(packet_in_disable_seconds != null){
+	        					slicer.setPacketInDisableAfter(Long.parseLong(packet_in_disable_seconds.getTextContent()) * 1000);
+	        				}
+	        				//optional budgets per message class, the rest follow flow_rate/flow_burst
+	        				for(MessageBudget.MessageClass cls : MessageBudget.MessageClass.values()){
+	        					Node class_rate = switchConfig.getAttributes().getNamedItem(cls.getConfigName() + "_rate");
+	        					if(class_rate != null){
+	        						slicer.setMessageRate(cls, Integer.parseInt(class_rate.getTextContent()));
+	        					}
+	        					Node class_burst = switchConfig.getAttributes().getNamedItem(cls.getConfigName() + "_burst");
+	        					if(class_burst != null){
+	        						slicer.setMessageBurst(cls, Integer.parseInt(class_burst.getTextContent()));
+	        					}
+	        				}
+	        				Node max_queued_bytes = switchConfig.getAttributes().getNamedItem("max_queued_bytes");
+	        				if(max_queued_bytes != null){
+	        					slicer.setMaxQueuedBytes(Integer.parseInt(max_queued_bytes.getTextContent()));
+	        				}
+	        				Node max_queued_messages = switchConfig.getAttributes().getNamedItem("max_queued_messages");
+	        				if(max_queued_messages != null){
+	        					slicer.setMaxQueuedMessages(Integer.parseInt(max_queued_messages.getTextContent()));
+	        				}
 	        				NodeList ports = switchConfig.getChildNodes();
 	        				//for every port create a port config
 	        				for(int k=0; k < ports.getLength(); k++){
@@ -197,14 +314,13 @@ public final class ConfigParser {
 		        					if(!range.getNodeName().equals("range")){
 		        						continue;
 		        					}
-		        					if(tag_management && Short.parseShort(range.getAttributes().getNamedItem("start").getTextContent()) != Short.parseShort(range.getAttributes().getNamedItem("end").getTextContent())){
+		        					short start = Short.parseShort(range.getAttributes().getNamedItem("start").getTextContent());
+		        					short end = Short.parseShort(range.getAttributes().getNamedItem("end").getTextContent());
+		        					if(tag_management && start != end){
 		        						log.error("Tag Mangement can only be used on a single VLAN, please fix config and try again");
 		        						throw new InvalidConfigException("Configuration is not valid!");
 		        					}
-		        					for(short m = Short.parseShort(range.getAttributes().getNamedItem("start").getTextContent()); 
-		        							m <= Short.parseShort(range.getAttributes().getNamedItem("end").getTextContent()); m++){
-		        						myRange.setVlanAvail(m, true);
-		        					}
+		        					myRange.addRange(start, end);
 		        				}
 		        				//add the vlanRange to the portConfig
 		        				pConfig.setVLANRange(myRange);
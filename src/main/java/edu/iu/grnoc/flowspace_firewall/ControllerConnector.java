@@ -22,9 +22,9 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 
-import net.floodlightcontroller.core.internal.OFMessageDecoder;
 import net.floodlightcontroller.core.internal.OFMessageEncoder;
 
 import org.jboss.netty.channel.ChannelHandler;
@@ -48,12 +48,15 @@ import org.slf4j.LoggerFactory;
 public class ControllerConnector extends TimerTask {
     private int workerThreads = 10;    
 	private HashMap <Long, List<Proxy>> proxies;
+	//packet in dispatch table for each switch, swapped whole on rebuild
+	private ConcurrentHashMap<Long, SliceDispatchTable> dispatchTables;
 	NioClientSocketChannelFactory channelCreator;
 	Timer timer;
 	private static final Logger log = LoggerFactory.getLogger(ControllerConnector.class);
 	
 	public ControllerConnector(){
 		proxies = new HashMap<Long, List<Proxy>>();
+		dispatchTables = new ConcurrentHashMap<Long, SliceDispatchTable>();
 
 		channelCreator = new NioClientSocketChannelFactory(
                 Executors.newCachedThreadPool(),
@@ -76,7 +79,7 @@ public class ControllerConnector extends TimerTask {
 	    ChannelHandler readTimeoutHandler = new ReadTimeoutHandler(timer, 30);
 	    OFControllerChannelHandler controllerHandler = new OFControllerChannelHandler();
 		
-        pipe.addLast("ofmessagedecoder", new OFMessageDecoder());
+        pipe.addLast("ofmessagedecoder", new OFMessageLengthDecoder());
         pipe.addLast("ofmessageencoder", new OFMessageEncoder());
         pipe.addLast("idle", idleHandler);
         pipe.addLast("timeout", readTimeoutHandler);
@@ -135,6 +138,7 @@ public class ControllerConnector extends TimerTask {
 		}else{
 			proxies.get(switchId).add(p);
 		}
+		this.rebuildDispatchTable(switchId);
 	}
 	
 	/**
@@ -148,6 +152,47 @@ public class ControllerConnector extends TimerTask {
 			List <Proxy> proxyList = proxies.get(switchId);
 			proxyList.remove(p);
 		}
+		this.rebuildDispatchTable(switchId);
+	}
+	
+	/**
+	 * returns the packet in dispatch table for a switch
+	 * or null if there isn't one.  Does not lock.
+	 * @param switchId
+	 * @return SliceDispatchTable
+	 */
+	public SliceDispatchTable getDispatchTable(Long switchId){
+		return dispatchTables.get(switchId);
+	}
+	
+	/**
+	 * rebuilds the packet in dispatch table for a switch
+	 * needs to be called whenever a proxy, its slicer or
+	 * the switch's ports change
+	 * @param switchId
+	 */
+	public synchronized void rebuildDispatchTable(Long switchId){
+		List<Proxy> proxyList = proxies.get(switchId);
+		if(proxyList == null || proxyList.isEmpty()){
+			dispatchTables.remove(switchId);
+			return;
+		}
+		try{
+			dispatchTables.put(switchId, new SliceDispatchTable(proxyList));
+		}catch(Exception e){
+			//fall back to handing packet ins to every proxy
+			log.error("Unable to build dispatch table for switch " + switchId + ": " + e.getMessage(), e);
+			dispatchTables.remove(switchId);
+		}
+	}
+	
+	/**
+	 * rebuilds the packet in dispatch table for every switch
+	 */
+	public synchronized void rebuildDispatchTables(){
+		for(Long dpid : proxies.keySet()){
+			this.rebuildDispatchTable(dpid);
+		}
 	}
 	
 	/**
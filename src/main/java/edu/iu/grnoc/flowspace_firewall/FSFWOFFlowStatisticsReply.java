@@ -12,6 +12,10 @@ public class FSFWOFFlowStatisticsReply extends OFFlowStatisticsReply{
 	private boolean verified = false;
 	private boolean flaggedForDelete = false;
 	private String sliceName;
+	//counters of the poll in progress, they replace the real ones when it is done
+	private transient long pollGeneration = 0;
+	private transient long pendingPackets = 0;
+	private transient long pendingBytes = 0;
 	
 	public boolean isVerified(){
 		return verified;
@@ -37,6 +41,38 @@ public class FSFWOFFlowStatisticsReply extends OFFlowStatisticsReply{
 		flaggedForDelete = status;
 	}
 	
+	/**
+	 * adds to the counters of the poll with this generation, the
+	 * counters of any earlier poll are dropped
+	 * @param generation
+	 * @param packets
+	 * @param bytes
+	 */
+	public void addPending(long generation, long packets, long bytes){
+		if(this.pollGeneration != generation){
+			this.pollGeneration = generation;
+			this.pendingPackets = 0;
+			this.pendingBytes = 0;
+		}
+		this.pendingPackets += packets;
+		this.pendingBytes += bytes;
+	}
+	
+	/**
+	 * sets the counters to what the poll with this generation counted,
+	 * 0 if the flow was not part of that poll
+	 * @param generation
+	 */
+	public void publishPending(long generation){
+		if(this.pollGeneration == generation){
+			this.setPacketCount(this.pendingPackets);
+			this.setByteCount(this.pendingBytes);
+		}else{
+			this.setPacketCount(0);
+			this.setByteCount(0);
+		}
+	}
+	
 	public void setSliceName(String slice){
 		this.sliceName = slice;
 	}
@@ -43,6 +43,7 @@ import net.floodlightcontroller.restserver.IRestApiService;
 
 import org.openflow.protocol.OFFlowMod;
 import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFPacketIn;
 import org.openflow.protocol.OFType;
 import org.openflow.protocol.statistics.OFStatistics;
 import org.slf4j.Logger;
@@ -70,6 +71,14 @@ public class FlowSpaceFirewall implements IFloodlightModule, IOFMessageListener,
     private ArrayList<HashMap<Long, Slicer>> slices;
     private List<IOFSwitch> switches;
     private FlowStatCacher statsCacher;
+    //how many switches have their stats polled at once
+    private int statsPollThreads = FlowStatCacher.DEFAULT_POLL_THREADS;
+    private long statsPollMinInterval = SwitchStatsPoller.DEFAULT_MIN_INTERVAL_MILLIS;
+    private long statsPollMaxInterval = SwitchStatsPoller.DEFAULT_MAX_INTERVAL_MILLIS;
+    private boolean statsStreaming = false;
+    //when the writes to a switch are flushed
+    private int writeBatchBytes = SwitchWriteCoalescer.DEFAULT_MAX_BATCH_BYTES;
+    private long writeBatchDelay = SwitchWriteCoalescer.DEFAULT_MAX_DELAY_MICROS;
     private ControllerConnector controllerConnector;
     protected IRestApiService restApi;
     
@@ -108,6 +117,10 @@ public class FlowSpaceFirewall implements IFloodlightModule, IOFMessageListener,
         	}
         }
         this.switches.add(sw);
+        SwitchWriteCoalescer writer = SwitchWriteCoalescer.getInstance(sw);
+        writer.setMaxBatchBytes(writeBatchBytes);
+        writer.setMaxDelayMicros(writeBatchDelay);
+        this.statsCacher.startPolling(sw);
         //loop through all slices
         for(HashMap<Long, Slicer> slice: slices){
         	//loop through all switches in the slice
@@ -147,6 +160,10 @@ public class FlowSpaceFirewall implements IFloodlightModule, IOFMessageListener,
 		return statsCacher.getSwitchStats(switchId);
 	}
 	
+	public SwitchStatsPoller getStatsPoller(long switchId){
+		return statsCacher.getPoller(switchId);
+	}
+	
 	public List<Proxy> getSwitchProxies(long switchId){
 		return controllerConnector.getSwitchProxies(switchId);
 	}
@@ -195,9 +212,12 @@ public class FlowSpaceFirewall implements IFloodlightModule, IOFMessageListener,
 			IOFSwitch tmpSwitch = switchIt.next();
 			if(tmpSwitch.getId() == switchId){
 				switchIt.remove();
+				//barriers in flight will never be answered now
+				SwitchWriteCoalescer.getInstance(tmpSwitch).getBackpressure().reset();
 			}
 		}
 				
+		this.statsCacher.stopPolling(switchId);
 		this.statsCacher.clearCache(switchId);
 		
 		while(it.hasNext()){
@@ -205,6 +225,7 @@ public class FlowSpaceFirewall implements IFloodlightModule, IOFMessageListener,
 			p.disconnect();
 			it.remove();
 		}
+		controllerConnector.rebuildDispatchTable(switchId);
 				
 	}
 	
@@ -244,7 +265,8 @@ public class FlowSpaceFirewall implements IFloodlightModule, IOFMessageListener,
 	@Override
 	public void switchPortChanged(long switchId, ImmutablePort port,
 			PortChangeType type) {
-		//nothing to do here
+		//port numbers may have changed so the packet in dispatch needs rebuilding
+		controllerConnector.rebuildDispatchTable(switchId);
 	}
 
 	@Override
@@ -338,6 +360,9 @@ public class FlowSpaceFirewall implements IFloodlightModule, IOFMessageListener,
 				this.removeSlice(p.getSwitch().getId(), p.getSlicer().getSliceName());
 			}
 			
+			//proxies have new slicers so rebuild the packet in dispatch
+			controllerConnector.rebuildDispatchTables();
+			
 		} catch (IOException e) {
 			e.printStackTrace();
 			return false;
@@ -365,27 +390,68 @@ public class FlowSpaceFirewall implements IFloodlightModule, IOFMessageListener,
 		if(sw == null || !sw.isActive()){
 			return Command.CONTINUE;
 		}
-		logger.debug("Received: " + msg.toString() + " from switch: " + sw.getStringId());
+		if(logger.isDebugEnabled()){
+			logger.debug("Received: " + msg.toString() + " from switch: " + sw.getStringId());
+		}
+		if(msg.getType() == OFType.BARRIER_REPLY || msg.getType() == OFType.ERROR){
+			SwitchBackpressure backpressure = SwitchWriteCoalescer.getInstance(sw).getBackpressure();
+			if(msg.getType() == OFType.BARRIER_REPLY && backpressure.barrierReply(msg.getXid())){
+				//one of our flow control barriers, not for any slice
+				return Command.CONTINUE;
+			}
+			if(msg.getType() == OFType.ERROR && backpressure.barrierError(msg.getXid())){
+				//the switch failed one of our barriers, not for any slice
+				return Command.CONTINUE;
+			}
+		}
 		List <Proxy> proxies = controllerConnector.getSwitchProxies(sw.getId());
 		
 		if(proxies == null){
 			logger.warn("No proxies for switch: " + sw.getStringId());
 			return Command.CONTINUE;
 		}
-
 		
-		for(Proxy p : proxies){
-			if(!p.getAdminStatus()){
-				logger.debug("slice disabled... skipping");
-			}else{
-				try{
-					logger.debug("attempting to send " + msg.toString() + " to slice: " + p.getSlicer().getSliceName() + " from switch: " + p.getSlicer().getSwitchName());
-					p.toController(msg,cntx);
-				}catch (Exception e){
-					//don't die please... just keep going and error the stack trace
-					logger.error("FSFW experienced an error:" + e.getMessage(), e);
+		if(msg.getType() == OFType.PACKET_IN){
+			//hand the packet in only to the slice that owns its port/vlan
+			//anything we can't parse still goes to every proxy
+			SliceDispatchTable table = controllerConnector.getDispatchTable(sw.getId());
+			OFPacketIn pcktIn = (OFPacketIn) msg;
+			int vlanId = PacketHeader.getVlanId(pcktIn.getPacketData());
+			if(table != null && vlanId != PacketHeader.MALFORMED){
+				proxies = table.getOwners(pcktIn.getInPort(), vlanId);
+				if(proxies.isEmpty()){
+					if(logger.isDebugEnabled()){
+						logger.debug("No slice owns port " + pcktIn.getInPort() + " vlan " + vlanId + " on switch: " + sw.getStringId());
+					}
+					return Command.CONTINUE;
+				}
+			}
+		}
+		
+		//everything the proxies send for this event goes out as one write per channel
+		WriteTrain.begin();
+		try{
+			for(Proxy p : proxies){
+				if(!p.getAdminStatus()){
+					logger.debug("slice disabled... skipping");
+				}else{
+					try{
+						if(logger.isDebugEnabled()){
+							logger.debug("attempting to send " + msg.toString() + " to slice: " + p.getSlicer().getSliceName() + " from switch: " + p.getSlicer().getSwitchName());
+						}
+						p.toController(msg,cntx);
+					}catch (Exception e){
+						//don't die please... just keep going and error the stack trace
+						logger.error("FSFW experienced an error:" + e.getMessage(), e);
+					}
 				}
 			}
+		}finally{
+			WriteTrain.end();
+		}
+		if(msg.getType() == OFType.PORT_STATUS){
+			//the proxies just updated their port ids
+			controllerConnector.rebuildDispatchTable(sw.getId());
 		}
 		return Command.CONTINUE;
 	}
@@ -424,6 +490,27 @@ public class FlowSpaceFirewall implements IFloodlightModule, IOFMessageListener,
         if(config.containsKey("configFile")){
         	configFile = config.get("configFile");
         }
+        if(config.containsKey("statsPollThreads")){
+        	statsPollThreads = Integer.parseInt(config.get("statsPollThreads"));
+        }
+        //bounds of the per switch stats poll interval in seconds
+        if(config.containsKey("statsPollMinInterval")){
+        	statsPollMinInterval = Long.parseLong(config.get("statsPollMinInterval")) * 1000;
+        }
+        if(config.containsKey("statsPollMaxInterval")){
+        	statsPollMaxInterval = Long.parseLong(config.get("statsPollMaxInterval")) * 1000;
+        }
+        //bytes and age in microseconds at which writes to a switch are flushed
+        if(config.containsKey("writeBatchBytes")){
+        	writeBatchBytes = Integer.parseInt(config.get("writeBatchBytes"));
+        }
+        if(config.containsKey("writeBatchDelay")){
+        	writeBatchDelay = Long.parseLong(config.get("writeBatchDelay"));
+        }
+        //reconcile flow stats replies segment by segment
+        if(config.containsKey("statsStreaming")){
+        	statsStreaming = Boolean.parseBoolean(config.get("statsStreaming"));
+        }
         
 		try{
 			this.slices = ConfigParser.parseConfig(configFile);
@@ -460,7 +547,8 @@ public class FlowSpaceFirewall implements IFloodlightModule, IOFMessageListener,
 		switches = Collections.synchronizedList(new ArrayList<IOFSwitch>());
 		//start up the stats collector timer
 		statsTimer = new Timer("StatsTimer");
-		statsCacher = new FlowStatCacher(this);
+		statsCacher = new FlowStatCacher(this, statsPollThreads, statsPollMinInterval, statsPollMaxInterval);
+		statsCacher.setStreaming(statsStreaming);
 		this.statsCacher.loadCache();
 		statsTimer.scheduleAtFixedRate(statsCacher, 0, 10 * 1000);
 		
@@ -20,9 +20,9 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
 
 import net.floodlightcontroller.core.IOFSwitch;
 
@@ -54,6 +54,17 @@ public class FlowStatCache{
 	private HashMap<Long, HashMap<Short, OFStatistics>> portStats;
 	private HashMap<Long, HashMap<String, List<OFStatistics>>> sliced;
 	private HashMap<Long, HashMap<OFMatch, OFStatistics>> map;
+	//the reverse of map, the switch matches mapped to each cached stat
+	private HashMap<Long, IdentityHashMap<OFStatistics, List<OFMatch>>> mappedBy;
+	//the poll of each switch whose replies are still coming in
+	private HashMap<Long, PendingPoll> pending;
+	//the counters of every flow in the last poll, all we keep of a streamed reply
+	private HashMap<Long, HashMap<OFMatch, FlowCounters>> counters;
+	//flows that appeared, went away or changed in the last poll, -1 for the first
+	private HashMap<Long, Integer> changedFlows;
+	private long lastGeneration = 0;
+	//the expected stats in sliced indexed by their match
+	private HashMap<Long, HashMap<String, HashMap<OFMatch, List<FSFWOFFlowStatisticsReply>>>> expected;
 	
 
 	private FlowSpaceFirewall parent;
@@ -65,8 +76,14 @@ public class FlowStatCache{
 		portStats = new HashMap<Long, HashMap<Short, OFStatistics>>();
 		//this is the mapping from DPID OFMatch to FlowMod
 		map = new HashMap<Long, HashMap<OFMatch, OFStatistics>>();
+		mappedBy = new HashMap<Long, IdentityHashMap<OFStatistics, List<OFMatch>>>();
+		pending = new HashMap<Long, PendingPoll>();
+		counters = new HashMap<Long, HashMap<OFMatch, FlowCounters>>();
+		changedFlows = new HashMap<Long, Integer>();
 		//this is the results to be returned when requested
 		sliced = new HashMap<Long, HashMap<String, List<OFStatistics>>>();
+		//match lookups into sliced
+		expected = new HashMap<Long, HashMap<String, HashMap<OFMatch, List<FSFWOFFlowStatisticsReply>>>>();
 		//need one more to track the lastSeen time
 		this.parent = parent;
 	}
@@ -84,19 +101,25 @@ public class FlowStatCache{
 		HashMap<Long, HashMap<String, List<OFStatistics>>> cache;
 		try {
 			cache = (HashMap<Long, HashMap<String, List<OFStatistics>>>) aInputStream.readObject();
-			this.sliced = cache;
+			HashMap<Long, HashMap<String, HashMap<OFMatch, List<FSFWOFFlowStatisticsReply>>>> index =
+					new HashMap<Long, HashMap<String, HashMap<OFMatch, List<FSFWOFFlowStatisticsReply>>>>();
 
 			long time = System.currentTimeMillis();
-			for(long dpid : this.sliced.keySet()){
-				HashMap<String, List<OFStatistics>> sliceMap = this.sliced.get(dpid);
+			for(long dpid : cache.keySet()){
+				HashMap<String, List<OFStatistics>> sliceMap = cache.get(dpid);
 				for(String sliceName : sliceMap.keySet()){
 					List<OFStatistics> stats = sliceMap.get(sliceName);
 					for(OFStatistics stat: stats){
 						FSFWOFFlowStatisticsReply flowStat = (FSFWOFFlowStatisticsReply)stat;
 						flowStat.setLastSeen(time);
+						indexStat(index, dpid, sliceName, flowStat);
 					}
 				}
 			}
+			synchronized(this){
+				this.sliced = cache;
+				this.expected = index;
+			}
 		} catch (ClassNotFoundException e) {
 			// TODO Auto-generated catch block
 			log.error("Error reading in cache file!  Starting from clean cache!");
@@ -153,6 +176,7 @@ public class FlowStatCache{
 			log.debug("Adding flow to the cache, switch didn't exist");
 			sliced.put(dpid, sliceStats);
 		}
+		indexStat(this.expected, dpid, sliceName, flowStat);
 		//need to update last seen
 		log.debug("Added Flow: " + flowStat.toString() + " to cache!");
 		flowStat.setLastSeen(System.currentTimeMillis());
@@ -166,6 +190,9 @@ public class FlowStatCache{
 	
 	public synchronized void clearFlowCache(Long switchId){
 		flowStats.remove(switchId);
+		pending.remove(switchId);
+		counters.remove(switchId);
+		changedFlows.remove(switchId);
 	}
 	
 	/**
@@ -174,19 +201,20 @@ public class FlowStatCache{
 	 * @param newStat
 	 */
 	
-	private boolean updateFlowStatData(OFStatistics cachedStat, OFFlowStatisticsReply newStat, HashMap<String, Integer> flowCount){
+	private boolean updateFlowStatData(OFStatistics cachedStat, OFFlowStatisticsReply newStat, PendingPoll poll){
 		FSFWOFFlowStatisticsReply cachedFlowStat = (FSFWOFFlowStatisticsReply) cachedStat;
 		if(cachedFlowStat.toBeDeleted()){
 			return false;
 		}
-		cachedFlowStat.setByteCount(cachedFlowStat.getByteCount() + newStat.getByteCount());
-		cachedFlowStat.setPacketCount(cachedFlowStat.getPacketCount() + newStat.getPacketCount());
+		//the counters are only replaced once the whole poll is in
+		cachedFlowStat.addPending(poll.generation, newStat.getPacketCount(), newStat.getByteCount());
 		cachedFlowStat.setDurationNanoseconds(newStat.getDurationNanoseconds());
 		cachedFlowStat.setDurationSeconds(newStat.getDurationSeconds());
 		cachedFlowStat.setLastSeen(System.currentTimeMillis());
 		cachedFlowStat.setVerified(true);
 		
 		String sliceName = ((FSFWOFFlowStatisticsReply) cachedStat).getSliceName();
+		HashMap<String, Integer> flowCount = poll.flowCounts;
 		if(flowCount.containsKey(sliceName)){
 			flowCount.put(sliceName, (flowCount.get(sliceName) + 1));
 		}else{
@@ -197,6 +225,80 @@ public class FlowStatCache{
 		return true;
 	}
 	
+	/**
+	 * adds a stat to the match index of the expected stats
+	 * @param index
+	 * @param switchId
+	 * @param sliceName
+	 * @param flowStat
+	 */
+	private static void indexStat(HashMap<Long, HashMap<String, HashMap<OFMatch, List<FSFWOFFlowStatisticsReply>>>> index,
+			long switchId, String sliceName, FSFWOFFlowStatisticsReply flowStat){
+		HashMap<String, HashMap<OFMatch, List<FSFWOFFlowStatisticsReply>>> sliceIndex = index.get(switchId);
+		if(sliceIndex == null){
+			sliceIndex = new HashMap<String, HashMap<OFMatch, List<FSFWOFFlowStatisticsReply>>>();
+			index.put(switchId, sliceIndex);
+		}
+		HashMap<OFMatch, List<FSFWOFFlowStatisticsReply>> matches = sliceIndex.get(sliceName);
+		if(matches == null){
+			matches = new HashMap<OFMatch, List<FSFWOFFlowStatisticsReply>>();
+			sliceIndex.put(sliceName, matches);
+		}
+		//keyed on a copy so the stat's match can't change the key under us
+		OFMatch key = flowStat.getMatch().clone();
+		List<FSFWOFFlowStatisticsReply> sameMatch = matches.get(key);
+		if(sameMatch == null){
+			//almost always just the one
+			sameMatch = new ArrayList<FSFWOFFlowStatisticsReply>(1);
+			matches.put(key, sameMatch);
+		}
+		sameMatch.add(flowStat);
+	}
+	
+	/**
+	 * removes a stat from the match index of the expected stats
+	 * @param switchId
+	 * @param sliceName
+	 * @param flowStat
+	 */
+	private void unindexStat(long switchId, String sliceName, FSFWOFFlowStatisticsReply flowStat){
+		List<FSFWOFFlowStatisticsReply> sameMatch = this.getExpected(switchId, sliceName, flowStat.getMatch());
+		if(sameMatch == null){
+			return;
+		}
+		//the same stat, not just an equal one
+		Iterator<FSFWOFFlowStatisticsReply> it = sameMatch.iterator();
+		while(it.hasNext()){
+			if(it.next() == flowStat){
+				it.remove();
+				break;
+			}
+		}
+		if(sameMatch.isEmpty()){
+			this.expected.get(switchId).get(sliceName).remove(flowStat.getMatch());
+		}
+	}
+	
+	/**
+	 * returns the expected stats of the slice with exactly this match, in
+	 * the order they were added
+	 * @param switchId
+	 * @param sliceName
+	 * @param match
+	 * @return List or null if there are none
+	 */
+	private List<FSFWOFFlowStatisticsReply> getExpected(long switchId, String sliceName, OFMatch match){
+		HashMap<String, HashMap<OFMatch, List<FSFWOFFlowStatisticsReply>>> sliceIndex = this.expected.get(switchId);
+		if(sliceIndex == null){
+			return null;
+		}
+		HashMap<OFMatch, List<FSFWOFFlowStatisticsReply>> matches = sliceIndex.get(sliceName);
+		if(matches == null){
+			return null;
+		}
+		return matches.get(match);
+	}
+	
 	/**
 	 * internally used to find a cachedStat based on a match, only 
 	 * @param switchId
@@ -208,18 +310,15 @@ public class FlowStatCache{
 		log.debug("looking for stat in our expected cache: " + match.toString());
 		if(sliced.containsKey(switchId)){
 			for(String slice: sliced.get(switchId).keySet()){
-				List <OFStatistics> expectedStats = new ArrayList<OFStatistics>(sliced.get(switchId).get(slice));
-				for(OFStatistics expectedOFStat: expectedStats){
-					FSFWOFFlowStatisticsReply expectedFlowStat = (FSFWOFFlowStatisticsReply) expectedOFStat;
-					log.debug("Comparing to match: " + expectedFlowStat.getMatch());
-					if(expectedFlowStat.getMatch().equals(match)){
-						//found it
-						log.debug("found the expected flow match!");
-						if(expectedFlowStat.toBeDeleted()){
-							continue;
-						}else{
-							return expectedFlowStat;
-						}
+				List<FSFWOFFlowStatisticsReply> sameMatch = this.getExpected(switchId, slice, match);
+				if(sameMatch == null){
+					continue;
+				}
+				for(FSFWOFFlowStatisticsReply expectedFlowStat: sameMatch){
+					//found it
+					log.debug("found the expected flow match!");
+					if(!expectedFlowStat.toBeDeleted()){
+						return expectedFlowStat;
 					}
 				}
 			}
@@ -231,19 +330,11 @@ public class FlowStatCache{
 	
 	private FSFWOFFlowStatisticsReply findCachedStat(Long switchId, OFMatch match, String sliceName){
 		log.debug("looking for stat in our expected cache: " + match.toString());
-		if(sliced.containsKey(switchId)){
-			if(sliced.get(switchId).containsKey(sliceName)){
-				List <OFStatistics> expectedStats = new ArrayList<OFStatistics>(sliced.get(switchId).get(sliceName));
-				for(OFStatistics expectedOFStat: expectedStats){
-					FSFWOFFlowStatisticsReply expectedFlowStat = (FSFWOFFlowStatisticsReply) expectedOFStat;
-					
-					if(expectedFlowStat.getMatch().equals(match)){
-						//found it
-						log.debug("found the expected flow match!");
-						return expectedFlowStat;
-					}
-				}
-			}
+		List<FSFWOFFlowStatisticsReply> sameMatch = this.getExpected(switchId, sliceName, match);
+		if(sameMatch != null){
+			//found it
+			log.debug("found the expected flow match!");
+			return sameMatch.get(0);
 		}
 		log.debug("Nothing matching that match!!");
 		return null;
@@ -280,7 +371,7 @@ public class FlowStatCache{
 		return null;
 	}
 	
-	private void processFlow(Long switchId, OFFlowStatisticsReply flowStat, long time, HashMap<String, Integer> flowCount){
+	private void processFlow(Long switchId, OFFlowStatisticsReply flowStat, PendingPoll poll){
 		
 		if(!map.containsKey(switchId)){
 			HashMap<OFMatch, OFStatistics> tmpMap = new HashMap<OFMatch, OFStatistics>();
@@ -292,7 +383,7 @@ public class FlowStatCache{
 		if(flowMap.containsKey(flowStat.getMatch())){
 			log.debug("Found the flow rule in our mapping");
 			OFFlowStatisticsReply cachedStat = (OFFlowStatisticsReply) flowMap.get(flowStat.getMatch());
-			if(this.updateFlowStatData(cachedStat, flowStat, flowCount)){
+			if(this.updateFlowStatData(cachedStat, flowStat, poll)){
 				return;
 			}else{
 				//uh oh this was set to be deleted...
@@ -361,9 +452,9 @@ public class FlowStatCache{
 		//just update it 
 		if(stat != null){
 			log.debug("Updating Flow Stat");
-			flowMap.put(flowStat.getMatch().clone(), (OFStatistics)stat);
+			this.mapFlow(switchId, flowStat.getMatch().clone(), stat);
 			log.debug("Map size: " + flowMap.size());
-			this.updateFlowStatData(stat, flowStat, flowCount);
+			this.updateFlowStatData(stat, flowStat, poll);
 		}else{ 
 			log.error("Error finding/adding flow stat to the cache!  This flow is not a part of any Slice!" + flowStat.toString());
 			//remove flow
@@ -401,36 +492,118 @@ public class FlowStatCache{
 	 * @param stats
 	 */
 	public synchronized void setFlowCache(Long switchId, List <OFStatistics> stats){
-		flowStats.put(switchId, stats);
 		log.debug("Setting Flow Cache! Switch: " + switchId + " Total Stats: " + stats.size());
-		
-		//first thing is to set all counters for all stats to 0
-		if(this.sliced.containsKey(switchId)){
-			//loop through our current cache and set all packet/byte counts to 0
-			Iterator<String> it = this.sliced.get(switchId).keySet().iterator();
-			while(it.hasNext()){
-				String slice = (String)it.next();
-				List<OFStatistics> ofStats = this.sliced.get(switchId).get(slice);
-				for(OFStatistics stat : ofStats){
-					OFFlowStatisticsReply flowStat = (OFFlowStatisticsReply) stat;
-					flowStat.setByteCount(0);
-					flowStat.setPacketCount(0);
-				}
-			}
+		long generation = this.beginFlowCache(switchId, true);
+		this.addFlowStats(switchId, generation, stats);
+		this.endFlowCache(switchId, generation);
+	}
+	
+	/**
+	 * starts a new poll of the switch, any poll of the switch that
+	 * has not ended is dropped.  The replies are handed to addFlowStats
+	 * as they arrive and endFlowCache is called after the last one,
+	 * until then the cache keeps serving the counters of the last poll.
+	 * The replies themselves are not kept, getSwitchFlowStats returns
+	 * null for the switch once the poll ends
+	 * @param switchId
+	 * @return long the generation of the poll
+	 */
+	public synchronized long beginFlowCache(Long switchId){
+		return this.beginFlowCache(switchId, false);
+	}
+	
+	private synchronized long beginFlowCache(Long switchId, boolean keepStats){
+		PendingPoll poll = new PendingPoll(++this.lastGeneration, System.currentTimeMillis(), keepStats);
+		this.pending.put(switchId, poll);
+		return poll.generation;
+	}
+	
+	/**
+	 * reconciles part of the replies of a poll into the cache
+	 * @param switchId
+	 * @param generation the generation beginFlowCache returned
+	 * @param stats
+	 * @return false if the poll is no longer the current one, the stats are ignored
+	 */
+	public synchronized boolean addFlowStats(Long switchId, long generation, List<? extends OFStatistics> stats){
+		PendingPoll poll = this.pending.get(switchId);
+		if(poll == null || poll.generation != generation){
+			log.debug("Ignoring stats of an old poll of switch: " + switchId);
+			return false;
 		}
-		
-		HashMap <String, Integer> flowCounts = new HashMap<String, Integer>();
+		HashMap<OFMatch, FlowCounters> previous = this.counters.get(switchId);
 		//now update process all the flows find their mapping and cache them
-		long time = System.currentTimeMillis();
-		//loop through all stats
 		for(OFStatistics stat : stats){
 			OFFlowStatisticsReply flowStat = (OFFlowStatisticsReply) stat;
 			log.debug("Processing Flow: " + flowStat.toString());
-			this.processFlow(switchId, flowStat, time, flowCounts);
+			this.processFlow(switchId, flowStat, poll);
+			this.countFlow(previous, flowStat, poll);
+			if(poll.stats != null){
+				poll.stats.add(stat);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * compares a flow with the last poll and keeps its counters for the next one
+	 * @param previous the counters of the last poll or null
+	 * @param flowStat
+	 * @param poll
+	 */
+	private void countFlow(HashMap<OFMatch, FlowCounters> previous, OFFlowStatisticsReply flowStat, PendingPoll poll){
+		FlowCounters last = previous == null ? null : previous.get(flowStat.getMatch());
+		if(last == null){
+			poll.changed++;
+		}else{
+			poll.found++;
+			if(last.packets != flowStat.getPacketCount() || last.bytes != flowStat.getByteCount()){
+				poll.changed++;
+			}
+		}
+		//the reply is dropped after this so its match is ours to keep
+		poll.counters.put(flowStat.getMatch(), new FlowCounters(flowStat.getPacketCount(), flowStat.getByteCount()));
+	}
+	
+	/**
+	 * finishes a poll after its last reply: publishes the counters,
+	 * removes flows that have not been seen for a while and updates
+	 * the flow counts of the proxies
+	 * @param switchId
+	 * @param generation the generation beginFlowCache returned
+	 * @return false if the poll is no longer the current one
+	 */
+	public synchronized boolean endFlowCache(Long switchId, long generation){
+		PendingPoll poll = this.pending.get(switchId);
+		if(poll == null || poll.generation != generation){
+			log.debug("Ignoring the end of an old poll of switch: " + switchId);
+			return false;
+		}
+		this.pending.remove(switchId);
+		if(poll.stats != null){
+			flowStats.put(switchId, poll.stats);
+		}else{
+			flowStats.remove(switchId);
+		}
+		HashMap<OFMatch, FlowCounters> previous = this.counters.put(switchId, poll.counters);
+		if(previous == null){
+			this.changedFlows.put(switchId, -1);
+		}else{
+			//whatever was not found again went away
+			this.changedFlows.put(switchId, poll.changed + Math.max(previous.size() - poll.found, 0));
+		}
+		
+		//flows that were not part of this poll count 0
+		if(this.sliced.containsKey(switchId)){
+			for(List<OFStatistics> ofStats : this.sliced.get(switchId).values()){
+				for(OFStatistics stat : ofStats){
+					((FSFWOFFlowStatisticsReply) stat).publishPending(generation);
+				}
+			}
 		}
 		
 		//are there any flows that need to go away (ie... we didn't see them since the last poll cycle)		
-		long timeToRemove = time - 60000;
+		long timeToRemove = poll.time - 60000;
 		if(this.sliced.containsKey(switchId)){
 			HashMap<String, List<OFStatistics>> sliceStats = this.sliced.get(switchId);
 			Iterator<String> it = sliceStats.keySet().iterator();
@@ -444,6 +617,7 @@ public class FlowStatCache{
 					if(flowStat.lastSeen() < timeToRemove){
 						log.debug("Removing flowStat: " + stat.toString());
 						itStat.remove();
+						this.unindexStat(switchId, slice, flowStat);
 							//have to also find all flows that point to this flow :(
 						this.removeMappedCache(switchId, flowStat);
 					}
@@ -453,6 +627,7 @@ public class FlowStatCache{
 		
 		//update all proxies for this switch so that they have the proper flow count
 		//ISSUE=10641
+		HashMap<String, Integer> flowCounts = poll.flowCounts;
 		List<HashMap<Long, Slicer>> slices = parent.getSlices();
 
 		for(HashMap<Long,Slicer> tmpSlices : slices){
@@ -470,6 +645,55 @@ public class FlowStatCache{
 				log.error("Problem updating flow counts for slice: " + p.getSlicer().getSwitchName() + ":" + p.getSlicer().getSliceName());
 			}
 		}
+		return true;
+	}
+	
+	/**
+	 * drops a poll that will never end, the cache keeps the last
+	 * poll's counters and no flows are removed
+	 * @param switchId
+	 * @param generation the generation beginFlowCache returned
+	 */
+	public synchronized void abortFlowCache(Long switchId, long generation){
+		PendingPoll poll = this.pending.get(switchId);
+		if(poll != null && poll.generation == generation){
+			this.pending.remove(switchId);
+		}
+	}
+	
+	/**
+	 * maps a flow from the switch to the cached stat it is counted in
+	 * and keeps the reverse mapping up to date
+	 * @param switchId
+	 * @param match the match of the flow on the switch
+	 * @param stat the cached stat
+	 */
+	private void mapFlow(long switchId, OFMatch match, OFStatistics stat){
+		IdentityHashMap<OFStatistics, List<OFMatch>> switchMappedBy = mappedBy.get(switchId);
+		if(switchMappedBy == null){
+			switchMappedBy = new IdentityHashMap<OFStatistics, List<OFMatch>>();
+			mappedBy.put(switchId, switchMappedBy);
+		}
+		OFStatistics previous = map.get(switchId).put(match, stat);
+		if(previous == stat){
+			return;
+		}
+		if(previous != null){
+			//the match used to be counted in another stat
+			List<OFMatch> previousMatches = switchMappedBy.get(previous);
+			if(previousMatches != null){
+				previousMatches.remove(match);
+				if(previousMatches.isEmpty()){
+					switchMappedBy.remove(previous);
+				}
+			}
+		}
+		List<OFMatch> matches = switchMappedBy.get(stat);
+		if(matches == null){
+			matches = new ArrayList<OFMatch>(1);
+			switchMappedBy.put(stat, matches);
+		}
+		matches.add(match);
 	}
 	
 	/**
@@ -482,19 +706,17 @@ public class FlowStatCache{
 	 */
 	
 	private void removeMappedCache(long switchId, OFStatistics stat){
-		if(map.containsKey(switchId)){
+		if(map.containsKey(switchId) && mappedBy.containsKey(switchId)){
 			HashMap<OFMatch, OFStatistics> switchMap = map.get(switchId);
-			if(switchMap.containsValue(stat)){
-				//well crap no easy way to do this...
-				Iterator<Entry<OFMatch, OFStatistics>> it = switchMap.entrySet().iterator();
-				while(it.hasNext()){
-					Entry<OFMatch, OFStatistics> entry = (Entry<OFMatch, OFStatistics>) it.next();
-					if(entry.getValue().equals(stat)){
-						it.remove();
-					}
+			List<OFMatch> matches = mappedBy.get(switchId).remove(stat);
+			if(matches == null){
+				return;
+			}
+			for(OFMatch match : matches){
+				if(switchMap.get(match) == stat){
+					switchMap.remove(match);
 				}
 			}
-			
 		}
 	}
 	
@@ -548,17 +770,49 @@ public class FlowStatCache{
 	/**
 	 * retrieves the stats for the requested switch
 	 * @param switchId
-	 * @return
+	 * @return List or null if the last poll was streamed
 	 */
 	public synchronized List <OFStatistics> getSwitchFlowStats(Long switchId){
 		log.debug("Looking for switch stats: " + switchId);
 		return flowStats.get(switchId);
 	}
 	
+	/**
+	 * returns the number of flows that appeared, went away or had
+	 * their counters change in the last poll of the switch
+	 * @param switchId
+	 * @return int or -1 if there was no poll before it to compare with
+	 */
+	public synchronized int getChangedFlows(Long switchId){
+		Integer changed = changedFlows.get(switchId);
+		if(changed == null){
+			return -1;
+		}
+		return changed;
+	}
+	
+	/**
+	 * returns the packet count of a flow in the last poll of the switch
+	 * @param switchId
+	 * @param match
+	 * @return Long or null if the flow was not in the last poll
+	 */
+	public synchronized Long getFlowPacketCount(Long switchId, OFMatch match){
+		HashMap<OFMatch, FlowCounters> switchCounters = counters.get(switchId);
+		if(switchCounters == null){
+			return null;
+		}
+		FlowCounters flowCounters = switchCounters.get(match);
+		if(flowCounters == null){
+			return null;
+		}
+		return flowCounters.packets;
+	}
+	
 
 	public synchronized List <OFStatistics> getSlicedFlowStats(Long switchId, String sliceName){
 		log.debug("Getting sliced stats for switch: " + switchId + " and slice " + sliceName);
-		if(!flowStats.containsKey(switchId)){
+		if(!counters.containsKey(switchId)){
 			return null;
 		}
 		if(sliced.containsKey(switchId)){
@@ -601,4 +855,36 @@ public class FlowStatCache{
 	}
 	
 	
+	/**
+	 * what a poll of a switch has gathered so far
+	 */
+	private static final class PendingPoll {
+		private final long generation;
+		private final long time;
+		private final HashMap<String, Integer> flowCounts = new HashMap<String, Integer>();
+		private final HashMap<OFMatch, FlowCounters> counters = new HashMap<OFMatch, FlowCounters>();
+		//the raw replies, null when they are not kept
+		private final List<OFStatistics> stats;
+		private int changed = 0;
+		private int found = 0;
+		
+		private PendingPoll(long generation, long time, boolean keepStats){
+			this.generation = generation;
+			this.time = time;
+			this.stats = keepStats ? new ArrayList<OFStatistics>() : null;
+		}
+	}
+	
+	/**
+	 * the counters of one flow in a poll
+	 */
+	private static final class FlowCounters {
+		private final long packets;
+		private final long bytes;
+		
+		private FlowCounters(long packets, long bytes){
+			this.packets = packets;
+			this.bytes = bytes;
+		}
+	}
 }
@@ -27,8 +27,13 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.floodlightcontroller.core.IOFSwitch;
 
@@ -37,7 +42,6 @@ import org.openflow.protocol.OFMatch;
 import org.openflow.protocol.OFPort;
 import org.openflow.protocol.OFStatisticsRequest;
 
-import org.openflow.protocol.statistics.OFFlowStatisticsReply;
 import org.openflow.protocol.statistics.OFFlowStatisticsRequest;
 import org.openflow.protocol.statistics.OFPortStatisticsReply;
 import org.openflow.protocol.statistics.OFPortStatisticsRequest;
@@ -54,42 +58,67 @@ import org.slf4j.LoggerFactory;
 public class FlowStatCacher extends TimerTask{
 
 	private static String cacheFile = "/var/run/fsfw/flowCache.ser";
+	//switches polled at the same time
+	public static final int DEFAULT_POLL_THREADS = 4;
 	FlowStatCache statsCache;
 	private static final Logger log = LoggerFactory.getLogger(FlowStatCacher.class);
+	private final ScheduledExecutorService pollExecutor;
+	private final ConcurrentHashMap<Long, SwitchStatsPoller> pollers;
+	//bounds of the adaptive poll interval of each switch
+	private final long minPollInterval;
+	private final long maxPollInterval;
+	//reconcile flow stats segment by segment as they arrive
+	private volatile boolean streaming = false;
 	
 	/**
-	 * A TimerTask that everytime is run gets the most recent 
-	 * stats from the switch and caches them
+	 * A TimerTask that everytime is run makes sure every switch
+	 * has its own stats poll cycle and saves the cache to disk
 	 * @throws  
 	 */
 	
 	public FlowStatCacher(FlowSpaceFirewall parent){
+		this(parent, DEFAULT_POLL_THREADS, SwitchStatsPoller.DEFAULT_MIN_INTERVAL_MILLIS, SwitchStatsPoller.DEFAULT_MAX_INTERVAL_MILLIS);
+	}
+	
+	public FlowStatCacher(FlowSpaceFirewall parent, int pollThreads, long minPollInterval, long maxPollInterval){
 		statsCache = new FlowStatCache(parent);
-
-		
+		this.minPollInterval = minPollInterval;
+		this.maxPollInterval = maxPollInterval;
+		pollers = new ConcurrentHashMap<Long, SwitchStatsPoller>();
+		pollExecutor = new ScheduledThreadPoolExecutor(Math.max(pollThreads, 1), new ThreadFactory(){
+			private final AtomicInteger count = new AtomicInteger(0);
+			
+			@Override
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, "StatsPoller-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 	}
 	/**
 	 * the TimerTask run method called by the Timer
-	 * Loops through the array of Switches and pulls the stats
-	 * stores the stats in the statsCache object
+	 * starts a poll cycle for any switch that does not have one,
+	 * stops the cycles of switches that are gone and writes the
+	 * statsCache to disk
 	 */
 	public void run(){
 		
 		List<IOFSwitch> switches = new ArrayList<IOFSwitch>(this.statsCache.getSwitches());
-		Iterator <IOFSwitch> it = switches.iterator();
-		
+		HashMap<Long, IOFSwitch> connected = new HashMap<Long, IOFSwitch>();
+		for(IOFSwitch sw : switches){
+			connected.put(sw.getId(), sw);
+			SwitchStatsPoller poller = this.pollers.get(sw.getId());
+			if(poller == null || poller.getSwitch() != sw){
+				this.startPolling(sw);
+			}
+		}
+		Iterator<Long> it = this.pollers.keySet().iterator();
 		while(it.hasNext()){
-			IOFSwitch sw = it.next();
-			log.debug("Getting stats for switch: " + sw.getStringId() );
-			List<OFStatistics> statsReply = getFlowStatsForSwitch(sw);
-			statsCache.setFlowCache(sw.getId(), statsReply);
-			HashMap<Short, OFStatistics> portStatsReply = getPortStatsForSwitch(sw);
-			statsCache.setPortCache(sw.getId(), portStatsReply);
-			
-			//check for anything that has expired
-			List<FlowTimeout> timeouts = statsCache.getPossibleExpiredFlows(sw.getId());
-			this.updateExpire(timeouts, sw.getId());
-			statsCache.checkExpireFlows(sw.getId());
+			Long switchId = it.next();
+			if(!connected.containsKey(switchId)){
+				this.stopPolling(switchId);
+			}
 		}
 		
 		
@@ -110,19 +139,90 @@ public class FlowStatCacher extends TimerTask{
 		
 	}
 	
+	/**
+	 * starts the poll cycle of a switch, replacing any it already had
+	 * @param sw
+	 */
+	public void startPolling(IOFSwitch sw){
+		SwitchStatsPoller poller = new SwitchStatsPoller(sw, this, this.pollExecutor, this.minPollInterval, this.maxPollInterval);
+		SwitchStatsPoller previous = this.pollers.put(sw.getId(), poller);
+		if(previous != null){
+			previous.cancel();
+		}
+		log.debug("Starting stats polling for switch: " + sw.getStringId());
+		poller.start();
+	}
+	
+	public void stopPolling(long switchId){
+		SwitchStatsPoller poller = this.pollers.remove(switchId);
+		if(poller != null){
+			log.debug("Stopping stats polling for switch: " + switchId);
+			poller.cancel();
+		}
+	}
+	
+	/**
+	 * turns on reconciling the flow stats of each segment of the
+	 * multipart reply as it arrives instead of after the whole reply
+	 * @param streaming
+	 */
+	public void setStreaming(boolean streaming){
+		this.streaming = streaming;
+	}
+	
+	public boolean isStreaming(){
+		return this.streaming;
+	}
+	
+	/**
+	 * returns the poll cycle of the switch or null if it is not polled
+	 * @param switchId
+	 * @return SwitchStatsPoller
+	 */
+	public SwitchStatsPoller getPoller(long switchId){
+		return this.pollers.get(switchId);
+	}
+	
+	/**
+	 * pulls the flow and port stats of one switch, stores them
+	 * in the statsCache and checks for expired flows
+	 * @param sw
+	 * @return PollResult how much of the flow table changed since the last poll
+	 */
+	public SwitchStatsPoller.PollResult pollSwitch(IOFSwitch sw){
+		log.debug("Getting stats for switch: " + sw.getStringId() );
+		SwitchStatsPoller.PollResult result;
+		if(this.streaming){
+			result = streamFlowStatsForSwitch(sw);
+		}else{
+			List<OFStatistics> statsReply = getFlowStatsForSwitch(sw);
+			if(statsReply == null){
+				statsCache.setFlowCache(sw.getId(), new ArrayList<OFStatistics>());
+				result = new SwitchStatsPoller.PollResult(0, -1, true);
+			}else{
+				statsCache.setFlowCache(sw.getId(), statsReply);
+				result = new SwitchStatsPoller.PollResult(statsReply.size(), statsCache.getChangedFlows(sw.getId()), false);
+			}
+		}
+		HashMap<Short, OFStatistics> portStatsReply = getPortStatsForSwitch(sw);
+		statsCache.setPortCache(sw.getId(), portStatsReply);
+		
+		//check for anything that has expired
+		List<FlowTimeout> timeouts = statsCache.getPossibleExpiredFlows(sw.getId());
+		this.updateExpire(timeouts, sw.getId());
+		statsCache.checkExpireFlows(sw.getId());
+		return result;
+	}
+	
 	public void updateExpire(List<FlowTimeout> timeouts, Long switchId){
 		for(FlowTimeout timeout : timeouts){
 			if(!timeout.isHard()){
-				for(OFStatistics stat : statsCache.getSwitchFlowStats(switchId)){
-					OFFlowStatisticsReply flowStat = (OFFlowStatisticsReply) stat;
-					if(flowStat.getMatch().equals(timeout.getFlow().getMatch())){
-						if(timeout.getPacketCount() == flowStat.getPacketCount()){
-							//hasn't changed... so it has been idle
-						}else{
-							timeout.setPacketCount(flowStat.getPacketCount());
-							timeout.updateLastUsed();
-						}
-					}
+				Long packetCount = statsCache.getFlowPacketCount(switchId, timeout.getFlow().getMatch());
+				if(packetCount == null || timeout.getPacketCount() == packetCount){
+					//not in the last poll or hasn't changed... so it has been idle
+				}else{
+					timeout.setPacketCount(packetCount);
+					timeout.updateLastUsed();
 				}
 			}
 		}
@@ -165,23 +265,13 @@ public class FlowStatCacher extends TimerTask{
 	 * Retrieves FlowStats for everything on the switch
 	 * and returns them.
 	 * @param sw
-	 * @return List of OFStatistics objects
+	 * @return List of OFStatistics objects or null if the switch did not answer
 	 */
 	private List<OFStatistics> getFlowStatsForSwitch(IOFSwitch sw){
 		List <OFStatistics> statsReply = new ArrayList<OFStatistics>();
 		List <OFStatistics> values = null;
 		Future<List<OFStatistics>> future;
-		// Statistics request object for getting flows
-        OFStatisticsRequest req = new OFStatisticsRequest();
-	    req.setStatisticType(OFStatisticsType.FLOW);
-	    int requestLength = req.getLengthU();
-    	OFFlowStatisticsRequest specificReq = new OFFlowStatisticsRequest();
-        specificReq.setMatch(new OFMatch().setWildcards(0xffffffff));
-        specificReq.setTableId((byte) 0xff);
-        specificReq.setOutPort((short)-1);
-        req.setStatistics(Collections.singletonList((OFStatistics)specificReq));
-        requestLength += specificReq.getLength();
-        req.setLengthU(requestLength);
+        OFStatisticsRequest req = buildFlowStatsRequest();
         
         try {
         	future = sw.queryStatistics(req);
@@ -196,11 +286,64 @@ public class FlowStatCacher extends TimerTask{
             }
         } catch (Exception e) {
             log.error("Failure retrieving statistics from switch " + sw, e);
+            return null;
         }
         log.debug("Stats cached for switch: " + sw.getId() + ". Total flows cached: " + statsReply.size());
         return statsReply;
 	}
 	
+	/**
+	 * Polls the FlowStats for everything on the switch, reconciling each
+	 * segment of the reply into the cache as it arrives.  The flows that
+	 * went away are only removed after the last segment, if the reply
+	 * does not complete the cache keeps the last poll.
+	 * @param sw
+	 * @return PollResult
+	 */
+	private SwitchStatsPoller.PollResult streamFlowStatsForSwitch(IOFSwitch sw){
+		long generation = statsCache.beginFlowCache(sw.getId());
+		FlowStatsStream stream = new FlowStatsStream(sw.getId(), statsCache, generation, sw.getNextTransactionId());
+		boolean complete = false;
+		try {
+			sw.sendStatsQuery(buildFlowStatsRequest(), stream.getXid(), stream);
+			complete = stream.await(10, TimeUnit.SECONDS);
+		} catch (IOException e) {
+			log.error("Failure retrieving statistics from switch " + sw, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			//the switch keeps the listener until told otherwise
+			sw.cancelStatisticsReply(stream.getXid());
+		}
+		if(!complete){
+			log.error("Incomplete flow stats from switch " + sw + " after " + stream.getSegments() + " segments");
+			statsCache.abortFlowCache(sw.getId(), generation);
+			return new SwitchStatsPoller.PollResult(stream.getFlows(), -1, true);
+		}
+		statsCache.endFlowCache(sw.getId(), generation);
+		log.debug("Stats cached for switch: " + sw.getId() + ". Total flows cached: " + stream.getFlows() + " in " + stream.getSegments() + " segments");
+		return new SwitchStatsPoller.PollResult(stream.getFlows(), statsCache.getChangedFlows(sw.getId()), false);
+	}
+	
+	/**
+	 * builds a request for the FlowStats of every flow on the switch
+	 * @return OFStatisticsRequest
+	 */
+	private OFStatisticsRequest buildFlowStatsRequest(){
+		// Statistics request object for getting flows
+        OFStatisticsRequest req = new OFStatisticsRequest();
+	    req.setStatisticType(OFStatisticsType.FLOW);
+	    int requestLength = req.getLengthU();
+    	OFFlowStatisticsRequest specificReq = new OFFlowStatisticsRequest();
+        specificReq.setMatch(new OFMatch().setWildcards(0xffffffff));
+        specificReq.setTableId((byte) 0xff);
+        specificReq.setOutPort((short)-1);
+        req.setStatistics(Collections.singletonList((OFStatistics)specificReq));
+        requestLength += specificReq.getLength();
+        req.setLengthU(requestLength);
+        return req;
+	}
+	
 	private HashMap<Short, OFStatistics> getPortStatsForSwitch(IOFSwitch sw){
 		List <OFStatistics> values = null;
 		Future<List<OFStatistics>> future;
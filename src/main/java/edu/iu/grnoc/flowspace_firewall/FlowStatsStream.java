@@ -0,0 +1,133 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IOFMessageListener;
+import net.floodlightcontroller.core.IOFSwitch;
+
+import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFStatisticsReply;
+import org.openflow.protocol.OFType;
+
+/**
+ * Receives the flow stats reply of one poll of a switch segment by
+ * segment and reconciles each segment into the FlowStatCache as it
+ * arrives, instead of waiting for the whole multipart reply.  The poll
+ * is done once the segment without the more flag has been handled.
+ * @author aragusa
+ *
+ */
+public class FlowStatsStream implements IOFMessageListener {
+
+	//OFPSF_REPLY_MORE, more segments of the reply follow
+	public static final short REPLY_MORE = 0x0001;
+
+	private final long switchId;
+	private final FlowStatCache cache;
+	private final long generation;
+	private final int xid;
+	private final CountDownLatch done;
+	//only written by the switch's thread, read after done
+	private volatile int segments = 0;
+	private volatile int flows = 0;
+	private volatile boolean stale = false;
+
+	/**
+	 * @param switchId the switch being polled
+	 * @param cache the cache to reconcile into
+	 * @param generation the generation FlowStatCache.beginFlowCache returned
+	 * @param xid the transaction id of the stats request
+	 */
+	public FlowStatsStream(long switchId, FlowStatCache cache, long generation, int xid){
+		this.switchId = switchId;
+		this.cache = cache;
+		this.generation = generation;
+		this.xid = xid;
+		this.done = new CountDownLatch(1);
+	}
+
+	@Override
+	public String getName(){
+		return FlowStatsStream.class.getSimpleName();
+	}
+
+	@Override
+	public boolean isCallbackOrderingPrereq(OFType type, String name){
+		return false;
+	}
+
+	@Override
+	public boolean isCallbackOrderingPostreq(OFType type, String name){
+		return false;
+	}
+
+	@Override
+	public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx){
+		if(msg.getType() != OFType.STATS_REPLY || msg.getXid() != this.xid || this.done.getCount() == 0){
+			return Command.CONTINUE;
+		}
+		OFStatisticsReply reply = (OFStatisticsReply) msg;
+		this.segments++;
+		if(reply.getStatistics() != null){
+			this.flows += reply.getStatistics().size();
+			if(!this.cache.addFlowStats(this.switchId, this.generation, reply.getStatistics())){
+				//a newer poll started, nothing more to do for this one
+				this.stale = true;
+				this.done.countDown();
+				return Command.CONTINUE;
+			}
+		}
+		if((reply.getFlags() & REPLY_MORE) == 0){
+			this.done.countDown();
+		}
+		return Command.CONTINUE;
+	}
+
+	/**
+	 * waits for the last segment of the reply
+	 * @param timeout
+	 * @param unit
+	 * @return true if every segment arrived and was reconciled
+	 * @throws InterruptedException
+	 */
+	public boolean await(long timeout, TimeUnit unit) throws InterruptedException{
+		return this.done.await(timeout, unit) && !this.stale;
+	}
+
+	public int getXid(){
+		return this.xid;
+	}
+
+	public long getGeneration(){
+		return this.generation;
+	}
+
+	public int getSegments(){
+		return this.segments;
+	}
+
+	/**
+	 * returns the number of flows in the segments received so far
+	 * @return int
+	 */
+	public int getFlows(){
+		return this.flows;
+	}
+}
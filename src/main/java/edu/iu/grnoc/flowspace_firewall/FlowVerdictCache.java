@@ -0,0 +1,190 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openflow.protocol.OFFlowMod;
+import org.openflow.protocol.OFMatch;
+import org.openflow.protocol.Wildcards;
+import org.openflow.protocol.action.OFAction;
+import org.openflow.protocol.action.OFActionOutput;
+import org.openflow.protocol.action.OFActionVirtualLanIdentifier;
+
+/**
+ * Bounded LRU cache of allow/deny decisions for flow mods.
+ * Flow mods are keyed on the only parts the slicing policy looks at
+ * (in_port, dl_vlan, their wildcard bits and the SET_VLAN/STRIP/OUTPUT
+ * actions) so flows that differ only in other fields share a verdict.
+ * The cache must be cleared whenever the port configuration changes.
+ * @author aragusa
+ *
+ */
+public class FlowVerdictCache {
+
+	private static final int DEFAULT_SIZE = 1024;
+
+	private final LinkedHashMap<Key, Boolean> verdicts;
+	private long hits = 0;
+	private long misses = 0;
+
+	public FlowVerdictCache(){
+		this(DEFAULT_SIZE);
+	}
+
+	public FlowVerdictCache(final int maxSize){
+		this.verdicts = new LinkedHashMap<Key, Boolean>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest){
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * returns the cached verdict for the key or null if there is none
+	 * @param key
+	 * @return Boolean verdict
+	 */
+	public synchronized Boolean get(Key key){
+		Boolean verdict = this.verdicts.get(key);
+		if(verdict == null){
+			this.misses++;
+		}else{
+			this.hits++;
+		}
+		return verdict;
+	}
+
+	public synchronized void put(Key key, boolean allowed){
+		this.verdicts.put(key, allowed);
+	}
+
+	/**
+	 * drops every cached verdict, the hit/miss counters are kept
+	 */
+	public synchronized void clear(){
+		this.verdicts.clear();
+	}
+
+	public synchronized int size(){
+		return this.verdicts.size();
+	}
+
+	public synchronized long getHits(){
+		return this.hits;
+	}
+
+	public synchronized long getMisses(){
+		return this.misses;
+	}
+
+	/**
+	 * builds the policy key for a flow mod
+	 * @param flowMod
+	 * @return Key or null if the flow mod has no match
+	 */
+	public static Key keyFor(OFFlowMod flowMod){
+		OFMatch match = flowMod.getMatch();
+		if(match == null){
+			return null;
+		}
+		Wildcards wc = match.getWildcardObj();
+		int wildcards = 0;
+		if(wc.isWildcarded(Wildcards.Flag.IN_PORT)){
+			wildcards |= 1;
+		}
+		if(wc.isWildcarded(Wildcards.Flag.DL_VLAN)){
+			wildcards |= 2;
+		}
+
+		//each policy relevant action is packed as (type << 16 | value)
+		int[] actions = new int[0];
+		List<OFAction> actionList = flowMod.getActions();
+		if(actionList != null){
+			actions = new int[actionList.size()];
+			int count = 0;
+			for(OFAction action : actionList){
+				switch(action.getType()){
+				case SET_VLAN_ID:
+					actions[count++] = (1 << 16) | (((OFActionVirtualLanIdentifier)action).getVirtualLanIdentifier() & 0xffff);
+					break;
+				case STRIP_VLAN:
+					actions[count++] = (2 << 16);
+					break;
+				case OUTPUT:
+					actions[count++] = (3 << 16) | (((OFActionOutput)action).getPort() & 0xffff);
+					break;
+				default:
+					break;
+				}
+			}
+			if(count != actions.length){
+				actions = Arrays.copyOf(actions, count);
+			}
+		}
+		return new Key(match.getInputPort(), match.getDataLayerVirtualLan(), wildcards, actions);
+	}
+
+	/**
+	 * the policy relevant projection of a flow mod
+	 */
+	public static final class Key {
+		private final short inPort;
+		private final short vlan;
+		private final int wildcards;
+		private final int[] actions;
+		private final int hash;
+
+		Key(short inPort, short vlan, int wildcards, int[] actions){
+			this.inPort = inPort;
+			this.vlan = vlan;
+			this.wildcards = wildcards;
+			this.actions = actions;
+			int h = inPort;
+			h = 31 * h + vlan;
+			h = 31 * h + wildcards;
+			h = 31 * h + Arrays.hashCode(actions);
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode(){
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj){
+			if(this == obj){
+				return true;
+			}
+			if(!(obj instanceof Key)){
+				return false;
+			}
+			Key other = (Key) obj;
+			return this.hash == other.hash
+					&& this.inPort == other.inPort
+					&& this.vlan == other.vlan
+					&& this.wildcards == other.wildcards
+					&& Arrays.equals(this.actions, other.actions);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of switch round trip times.  Buckets are
+ * powers of two in microseconds, bucket i counts latencies below
+ * 2^i us and the last bucket counts everything slower.
+ * @author aragusa
+ *
+ */
+public class LatencyHistogram {
+
+	//2^23 us is a little over 8 seconds
+	public static final int BUCKETS = 24;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * records one round trip
+	 * @param nanos the latency in nanoseconds
+	 */
+	public void record(long nanos){
+		if(nanos < 0){
+			nanos = 0;
+		}
+		this.buckets.incrementAndGet(bucketFor(nanos));
+		this.count.incrementAndGet();
+		this.totalNanos.addAndGet(nanos);
+		long max = this.maxNanos.get();
+		while(nanos > max && !this.maxNanos.compareAndSet(max, nanos)){
+			max = this.maxNanos.get();
+		}
+	}
+
+	private static int bucketFor(long nanos){
+		long micros = nanos / 1000;
+		int bucket = 64 - Long.numberOfLeadingZeros(micros);
+		return bucket < BUCKETS ? bucket : BUCKETS - 1;
+	}
+
+	/**
+	 * returns the upper bound in microseconds of a bucket
+	 * @param bucket
+	 * @return long microseconds
+	 */
+	public static long getBucketLimit(int bucket){
+		if(bucket >= BUCKETS - 1){
+			return Long.MAX_VALUE;
+		}
+		return 1L << bucket;
+	}
+
+	public long getCount(){
+		return this.count.get();
+	}
+
+	public long getMaxMicros(){
+		return this.maxNanos.get() / 1000;
+	}
+
+	public long getMeanMicros(){
+		long n = this.count.get();
+		if(n == 0){
+			return 0;
+		}
+		return this.totalNanos.get() / n / 1000;
+	}
+
+	/**
+	 * returns the upper bound of the bucket the percentile falls in
+	 * @param percentile between 0 and 100
+	 * @return long microseconds, 0 if nothing has been recorded
+	 */
+	public long getPercentileMicros(double percentile){
+		long[] snapshot = this.getBuckets();
+		long total = 0;
+		for(long c : snapshot){
+			total += c;
+		}
+		if(total == 0){
+			return 0;
+		}
+		long rank = (long)Math.ceil(total * percentile / 100.0);
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++){
+			seen += snapshot[i];
+			if(seen >= rank && snapshot[i] > 0){
+				return Math.min(getBucketLimit(i), this.getMaxMicros());
+			}
+		}
+		return this.getMaxMicros();
+	}
+
+	/**
+	 * returns a copy of the bucket counts
+	 * @return long[] counts
+	 */
+	public long[] getBuckets(){
+		long[] snapshot = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++){
+			snapshot[i] = this.buckets.get(i);
+		}
+		return snapshot;
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openflow.protocol.OFType;
+
+/**
+ * Separate token buckets for each class of message a slice controller
+ * sends to the switch, so a flood of one kind (stats polling, packet
+ * outs during an ARP storm) can not use up the budget of the others.
+ * A class without its own rate/burst follows the slice wide flow_rate
+ * and flow_burst.
+ * @author aragusa
+ *
+ */
+public class MessageBudget {
+
+	public enum MessageClass {
+		FLOW_MOD("flow_mod"),
+		PACKET_OUT("packet_out"),
+		STATS("stats"),
+		OTHER("other");
+
+		private final String configName;
+
+		private MessageClass(String configName){
+			this.configName = configName;
+		}
+
+		/**
+		 * the prefix of the config attributes and status fields of the class
+		 * @return String
+		 */
+		public String getConfigName(){
+			return this.configName;
+		}
+
+		public static MessageClass classify(OFType type){
+			switch(type){
+			case FLOW_MOD:
+				return FLOW_MOD;
+			case PACKET_OUT:
+				return PACKET_OUT;
+			case STATS_REQUEST:
+				return STATS;
+			default:
+				return OTHER;
+			}
+		}
+	}
+
+	private final RateTracker[] trackers;
+	//classes with their own rate/burst, the rest follow the defaults
+	private final boolean[] ownRate;
+	private final boolean[] ownBurst;
+	private final AtomicLong[] rejects;
+	private int defaultRate;
+	private int defaultBurst;
+
+	/**
+	 * @param burst default burst of every class, 0 or less for one
+	 * second worth of the rate
+	 * @param rate default messages a second of every class
+	 */
+	public MessageBudget(int burst, int rate){
+		this.defaultRate = rate;
+		this.defaultBurst = burst;
+		int classes = MessageClass.values().length;
+		this.trackers = new RateTracker[classes];
+		this.ownRate = new boolean[classes];
+		this.ownBurst = new boolean[classes];
+		this.rejects = new AtomicLong[classes];
+		for(int i = 0; i < classes; i++){
+			this.trackers[i] = new RateTracker(burst, rate);
+			this.rejects[i] = new AtomicLong(0);
+		}
+	}
+
+	/**
+	 * takes a token from the bucket of the message's class
+	 * @param type the type of the message
+	 * @return true if the message may be processed
+	 */
+	public boolean okToProcess(OFType type){
+		int idx = MessageClass.classify(type).ordinal();
+		if(this.trackers[idx].okToProcess()){
+			return true;
+		}
+		this.rejects[idx].incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * sets the rate of every class that does not have its own
+	 * @param rate
+	 */
+	public synchronized void setDefaultRate(int rate){
+		this.defaultRate = rate;
+		for(int i = 0; i < this.trackers.length; i++){
+			if(!this.ownRate[i]){
+				this.trackers[i].setRate(rate);
+			}
+		}
+	}
+
+	/**
+	 * sets the burst of every class that does not have its own
+	 * @param burst
+	 */
+	public synchronized void setDefaultBurst(int burst){
+		this.defaultBurst = burst;
+		for(int i = 0; i < this.trackers.length; i++){
+			if(!this.ownBurst[i]){
+				this.trackers[i].setBurst(burst);
+			}
+		}
+	}
+
+	public synchronized void setRate(MessageClass cls, int rate){
+		this.ownRate[cls.ordinal()] = true;
+		this.trackers[cls.ordinal()].setRate(rate);
+	}
+
+	public synchronized void setBurst(MessageClass cls, int burst){
+		this.ownBurst[cls.ordinal()] = true;
+		this.trackers[cls.ordinal()].setBurst(burst);
+	}
+
+	public synchronized int getDefaultRate(){
+		return this.defaultRate;
+	}
+
+	/**
+	 * returns the number of messages allowed back to back by default
+	 * @return int
+	 */
+	public synchronized int getDefaultBurst(){
+		if(this.defaultBurst > 0){
+			return this.defaultBurst;
+		}
+		return Math.max(this.defaultRate, 1);
+	}
+
+	public int getMaxRate(MessageClass cls){
+		return this.trackers[cls.ordinal()].getMaxRate();
+	}
+
+	public int getBurst(MessageClass cls){
+		return this.trackers[cls.ordinal()].getBurst();
+	}
+
+	/**
+	 * returns the moving average of messages a second allowed for the class
+	 * @param cls
+	 * @return double
+	 */
+	public double getRate(MessageClass cls){
+		return this.getRate(cls, System.nanoTime());
+	}
+
+	double getRate(MessageClass cls, long nanoTime){
+		return this.trackers[cls.ordinal()].getRate(nanoTime);
+	}
+
+	/**
+	 * returns the moving average of messages a second allowed over every class
+	 * @return double
+	 */
+	public double getRate(){
+		return this.getRate(System.nanoTime());
+	}
+
+	//every class is read at the same instant
+	double getRate(long nanoTime){
+		double rate = 0;
+		for(RateTracker tracker : this.trackers){
+			rate += tracker.getRate(nanoTime);
+		}
+		return rate;
+	}
+
+	public long getRejects(MessageClass cls){
+		return this.rejects[cls.ordinal()].get();
+	}
+}
@@ -59,6 +59,8 @@ class OFControllerChannelHandler
     private static final Logger log = LoggerFactory.getLogger(OFControllerChannelHandler.class);
 
     private Channel channel;
+    //everything sent to the controller goes through here
+    private ChannelWriteBatch outbound;
     private IOFSwitch sw;
     private Proxy proxy;
     // State needs to be volatile because the HandshakeTimeoutHandler
@@ -403,7 +405,7 @@ class OFControllerChannelHandler
             reply.setXid(m.getXid());
             reply.setPayload(m.getPayload());
             reply.setLengthU(m.getLengthU());
-            h.channel.write(Collections.singletonList(reply));
+            h.sendMessage(reply);
             log.debug("Sent ECHO_REPLY");
         }
 
@@ -498,6 +500,11 @@ class OFControllerChannelHandler
                                  ChannelStateEvent e) throws Exception {
         
         channel = e.getChannel();
+        outbound = new ChannelWriteBatch(channel);
+        if (proxy != null) {
+            outbound.setQueueLimits(proxy.getSlicer().getMaxQueuedBytes(),
+                                    proxy.getSlicer().getMaxQueuedMessages());
+        }
         log.info("New controller connection to {}",
                  channel.getRemoteAddress());
         log.debug("Sending HELLO");
@@ -631,25 +638,29 @@ class OFControllerChannelHandler
             @SuppressWarnings("unchecked")
             List<OFMessage> msglist = (List<OFMessage>)e.getMessage();
 
-            for (OFMessage ofm : msglist) {
-                
-                try {
-                                        // Do the actual packet processing
-                    state.processOFMessage(this, ofm);
-
-                }
-                catch (Exception ex) {
-                    // We are the last handler in the stream, so run the
-                    // exception through the channel again by passing in
-                    // ctx.getChannel().
-                    Channels.fireExceptionCaught(ctx.getChannel(), ex);
+            //writes to the switch are held until the whole train is processed
+            WriteTrain.begin();
+            try {
+                for (OFMessage ofm : msglist) {
+                    
+                    try {
+                                            // Do the actual packet processing
+                        state.processOFMessage(this, ofm);
+
+                    }
+                    catch (Exception ex) {
+                        // We are the last handler in the stream, so run the
+                        // exception through the channel again by passing in
+                        // ctx.getChannel().
+                        Channels.fireExceptionCaught(ctx.getChannel(), ex);
+                    }
                 }
             }
-
-           
-            // Flush all thread local queues etc. generated by this train
-            // of messages.
-            
+            finally {
+                // Flush all the switch writes generated by this train
+                // of messages.
+                WriteTrain.end();
+            }
         }
         else {
             Channels.fireExceptionCaught(ctx.getChannel(),
@@ -702,10 +713,28 @@ class OFControllerChannelHandler
         return null;
     }
 
+    public ChannelWriteBatch getOutbound(){
+        return outbound;
+    }
+
+    /**
+     * true if the controller is not keeping up with what we send it
+     * and messages we can do without should be dropped
+     */
+    public boolean isSaturated(){
+        return outbound != null && outbound.isSaturated();
+    }
+
+    public void setQueueLimits(int maxQueuedBytes, int maxQueuedMessages){
+        if (outbound != null) {
+            outbound.setQueueLimits(maxQueuedBytes, maxQueuedMessages);
+        }
+    }
+
     public void sendMessage(OFMessage m) throws IOException{
     	log.debug("attempting to send message: " + m.toString());
     	if(channel != null && channel.isConnected()){
-    		channel.write(Collections.singletonList(m));
+    		outbound.write(m);
     	}else{
     		log.error("Channel is not connected can not send message!!!");
     	}
@@ -736,7 +765,7 @@ class OFControllerChannelHandler
         // Send initial Features Request
         OFMessage m = BasicFactory.getInstance().getMessage(type);
         m.setXid(handshakeTransactionIds--);
-        channel.write(Collections.singletonList(m));
+        outbound.write(m);
     }
 
 
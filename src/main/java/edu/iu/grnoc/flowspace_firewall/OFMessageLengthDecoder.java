@@ -0,0 +1,97 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.factory.BasicFactory;
+import org.openflow.protocol.factory.MessageParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes OpenFlow messages from a slice controller and rejects any
+ * message whose header length does not match what its body decodes to.
+ * Each message is parsed from a zero copy slice of exactly its declared
+ * length, so the check is just comparing how much of the slice was read
+ * and nothing has to be serialized again before it goes to the switch.
+ * @author aragusa
+ *
+ */
+public class OFMessageLengthDecoder extends FrameDecoder {
+
+	private static final Logger log = LoggerFactory.getLogger(OFMessageLengthDecoder.class);
+	private static final int LENGTH_OFFSET = 2;
+	
+	private BasicFactory factory = BasicFactory.getInstance();
+	
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+		if(!channel.isConnected()){
+			//same as the floodlight decoder, don't read frames after disconnect
+			return null;
+		}
+		List<OFMessage> messages = new ArrayList<OFMessage>();
+		while(buffer.readableBytes() >= OFMessage.MINIMUM_LENGTH){
+			int start = buffer.readerIndex();
+			int length = buffer.getUnsignedShort(start + LENGTH_OFFSET);
+			if(length < OFMessage.MINIMUM_LENGTH){
+				//no way to find the next message in the stream
+				throw new MessageParseException("Invalid OpenFlow message length " + length + " from " + channel.getRemoteAddress());
+			}
+			if(buffer.readableBytes() < length){
+				//wait for the rest of the message
+				break;
+			}
+			ChannelBuffer frame = buffer.slice(start, length);
+			buffer.skipBytes(length);
+			OFMessage msg = this.parseFrame(frame);
+			if(msg == null){
+				//invalid packet don't send it on since we can't trust the xid to send an error
+				log.error("Controller " + channel.getRemoteAddress() + " sent a message with an invalid header length " + length + " Rejecting!");
+				continue;
+			}
+			messages.add(msg);
+		}
+		if(messages.isEmpty()){
+			return null;
+		}
+		return messages;
+	}
+	
+	/**
+	 * parses one message from a frame of exactly its declared length
+	 * @return OFMessage or null if the message does not fill the frame
+	 */
+	private OFMessage parseFrame(ChannelBuffer frame){
+		List<OFMessage> parsed;
+		try{
+			parsed = this.factory.parseMessage(frame);
+		}catch(MessageParseException e){
+			return null;
+		}
+		if(parsed == null || parsed.size() != 1 || frame.readable()){
+			return null;
+		}
+		return parsed.get(0);
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+/**
+ * Reads the parts of an ethernet frame we slice on straight
+ * out of the packet bytes without deserializing the packet
+ * @author aragusa
+ *
+ */
+public final class PacketHeader {
+
+	//returned when the frame is too short to hold the header
+	public static final int MALFORMED = Integer.MIN_VALUE;
+
+	public static final int ETHERTYPE_OFFSET = 12;
+	public static final int TCI_OFFSET = 14;
+	public static final int UNTAGGED_HEADER_LENGTH = 14;
+	public static final int TAGGED_HEADER_LENGTH = 18;
+	public static final int TPID_8021Q = 0x8100;
+	public static final int VLAN_TAG_LENGTH = 4;
+
+	private PacketHeader(){
+	}
+
+	/**
+	 * returns the outer 802.1Q VLAN id of the frame the same way
+	 * OFMatch.loadFromPacket does: the 12 bit VID for tagged frames,
+	 * VLANRange.UNTAGGED for untagged frames and MALFORMED if the
+	 * frame is truncated
+	 * @param data the ethernet frame
+	 * @return int vlan id
+	 */
+	public static int getVlanId(byte[] data){
+		if(data == null || data.length < UNTAGGED_HEADER_LENGTH){
+			return MALFORMED;
+		}
+		if(readShort(data, ETHERTYPE_OFFSET) != TPID_8021Q){
+			return VLANRange.UNTAGGED;
+		}
+		if(data.length < TAGGED_HEADER_LENGTH){
+			return MALFORMED;
+		}
+		return readShort(data, TCI_OFFSET) & 0x0fff;
+	}
+
+	/**
+	 * removes the outer 802.1Q tag from the frame with a single copy
+	 * into a new array, the same result as deserializing the frame,
+	 * setting the vlan to untagged and serializing it again.
+	 * Untagged or truncated frames are returned unchanged
+	 * @param data the ethernet frame
+	 * @return byte[] the untagged frame
+	 */
+	public static byte[] stripVlan(byte[] data){
+		if(data == null || data.length < TAGGED_HEADER_LENGTH
+				|| readShort(data, ETHERTYPE_OFFSET) != TPID_8021Q){
+			return data;
+		}
+		//dst/src macs stay put, the inner ethertype moves up over the tag
+		byte[] stripped = new byte[data.length - VLAN_TAG_LENGTH];
+		System.arraycopy(data, 0, stripped, 0, ETHERTYPE_OFFSET);
+		System.arraycopy(data, ETHERTYPE_OFFSET + VLAN_TAG_LENGTH, stripped, ETHERTYPE_OFFSET,
+				data.length - ETHERTYPE_OFFSET - VLAN_TAG_LENGTH);
+		return stripped;
+	}
+
+	/**
+	 * builds a copy of an untagged frame with an 802.1Q tag for the
+	 * vlan inserted after the source mac, the same result as
+	 * deserializing the frame, setting the vlan and serializing it again.
+	 * The frame is returned unchanged if the vlan is VLANRange.UNTAGGED
+	 * @param data the untagged ethernet frame
+	 * @param vlanId the vlan to tag the frame with
+	 * @return byte[] the tagged frame
+	 */
+	public static byte[] pushVlan(byte[] data, short vlanId){
+		if(vlanId == VLANRange.UNTAGGED){
+			return data;
+		}
+		byte[] tagged = new byte[data.length + VLAN_TAG_LENGTH];
+		System.arraycopy(data, 0, tagged, 0, ETHERTYPE_OFFSET);
+		tagged[ETHERTYPE_OFFSET] = (byte)(TPID_8021Q >>> 8);
+		tagged[ETHERTYPE_OFFSET + 1] = (byte)TPID_8021Q;
+		tagged[TCI_OFFSET] = (byte)((vlanId >>> 8) & 0x0f);
+		tagged[TCI_OFFSET + 1] = (byte)vlanId;
+		System.arraycopy(data, ETHERTYPE_OFFSET, tagged, ETHERTYPE_OFFSET + VLAN_TAG_LENGTH,
+				data.length - ETHERTYPE_OFFSET);
+		return tagged;
+	}
+
+	private static int readShort(byte[] data, int offset){
+		return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+	}
+}
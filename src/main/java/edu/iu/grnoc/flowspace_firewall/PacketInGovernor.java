@@ -0,0 +1,193 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides what to do with each packet in of a slice when it goes over
+ * its packet in rate.  Instead of disabling the slice on the first
+ * packet in over the limit the response gets stronger the longer the
+ * overload lasts:
+ * DROPPING - packet ins over the rate limit are dropped
+ * SAMPLING - after sampleAfter only 1 in sampleRate packet ins of
+ *            each flow are considered at all
+ * disable  - only once packet ins have been rejected without a break
+ *            for disableAfter is the slice disabled
+ * The slice is back to NORMAL once nothing has been rejected for a
+ * second and the packet ins offered are under the rate again.
+ * @author aragusa
+ *
+ */
+public class PacketInGovernor {
+
+	public enum State { NORMAL, DROPPING, SAMPLING }
+
+	public enum Verdict { FORWARD, DROP, DISABLE }
+
+	public static final int DEFAULT_SAMPLE_RATE = 10;
+	public static final long DEFAULT_SAMPLE_AFTER_MILLIS = 2000;
+	public static final long DEFAULT_DISABLE_AFTER_MILLIS = 30000;
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+	private static final long NANOS_PER_SECOND = 1000000000L;
+	//a gap in rejections this long ends a run of them
+	private static final long RECOVER_NANOS = NANOS_PER_SECOND;
+	//per flow sample counters, flows that hash together share one
+	private static final int FLOW_SLOTS = 1024;
+
+	private static final Logger log = LoggerFactory.getLogger(PacketInGovernor.class);
+
+	private final RateTracker limiter;
+	private volatile int sampleRate;
+	private volatile long sampleAfterNanos;
+	private volatile long disableAfterNanos;
+
+	//everything below is guarded by this
+	private State state = State.NORMAL;
+	private long overloadStart;
+	private long rejectingSince;
+	private long lastReject;
+	//packet ins offered in the current and the last full second
+	private long windowStart;
+	private int windowCount = 0;
+	private int lastWindowCount = 0;
+	private final int[] flowCounts = new int[FLOW_SLOTS];
+
+	private final AtomicLong dropped = new AtomicLong(0);
+	private final AtomicLong sampled = new AtomicLong(0);
+
+	public PacketInGovernor(RateTracker limiter){
+		this(limiter, DEFAULT_SAMPLE_RATE, DEFAULT_SAMPLE_AFTER_MILLIS, DEFAULT_DISABLE_AFTER_MILLIS);
+	}
+
+	public PacketInGovernor(RateTracker limiter, int sampleRate, long sampleAfterMillis, long disableAfterMillis){
+		this.limiter = limiter;
+		this.setSampleRate(sampleRate);
+		this.setSampleAfter(sampleAfterMillis);
+		this.setDisableAfter(disableAfterMillis);
+		long now = System.nanoTime();
+		this.windowStart = now;
+		this.lastReject = now - RECOVER_NANOS - 1;
+	}
+
+	/**
+	 * decides what to do with a packet in that is part of the slice
+	 * @param inPort the port the packet arrived on
+	 * @param data the packet
+	 * @return Verdict FORWARD to send it to the controller, DROP to
+	 * throw it away and DISABLE when the slice must be disabled
+	 */
+	public synchronized Verdict check(short inPort, byte[] data){
+		long now = System.nanoTime();
+		if(now - this.windowStart >= NANOS_PER_SECOND){
+			this.lastWindowCount = now - this.windowStart >= 2 * NANOS_PER_SECOND ? 0 : this.windowCount;
+			this.windowCount = 0;
+			this.windowStart = now;
+		}
+		this.windowCount++;
+
+		if(this.state != State.NORMAL && now - this.lastReject > RECOVER_NANOS
+				&& this.lastWindowCount <= this.limiter.getMaxRate()){
+			log.info("Packet in overload is over, was " + this.state);
+			this.state = State.NORMAL;
+		}
+
+		if(this.state == State.SAMPLING && !this.isSample(inPort, data)){
+			this.dropped.incrementAndGet();
+			return Verdict.DROP;
+		}
+
+		if(this.limiter.okToProcess()){
+			if(this.state == State.SAMPLING){
+				this.sampled.incrementAndGet();
+			}
+			return Verdict.FORWARD;
+		}
+
+		if(now - this.lastReject > RECOVER_NANOS){
+			this.rejectingSince = now;
+		}
+		this.lastReject = now;
+		if(this.state == State.NORMAL){
+			log.warn("Packet in rate limit of " + this.limiter.getMaxRate() + " exceeded, dropping packet ins over the limit");
+			this.state = State.DROPPING;
+			this.overloadStart = now;
+		}
+		if(now - this.rejectingSince >= this.disableAfterNanos){
+			this.state = State.NORMAL;
+			return Verdict.DISABLE;
+		}
+		if(this.state == State.DROPPING && now - this.overloadStart >= this.sampleAfterNanos){
+			log.warn("Packet in rate limit still exceeded, sampling 1 in " + this.sampleRate + " packet ins per flow");
+			this.state = State.SAMPLING;
+			Arrays.fill(this.flowCounts, 0);
+		}
+		this.dropped.incrementAndGet();
+		return Verdict.DROP;
+	}
+
+	/**
+	 * counts the packet against its flow, true for every sampleRate'th
+	 * packet starting with the first
+	 */
+	private boolean isSample(short inPort, byte[] data){
+		if(this.sampleRate <= 1){
+			return true;
+		}
+		//the flow is the in port and the ethernet header
+		int hash = inPort;
+		int length = Math.min(data.length, PacketHeader.TAGGED_HEADER_LENGTH);
+		for(int i = 0; i < length; i++){
+			hash = 31 * hash + data[i];
+		}
+		hash ^= (hash >>> 16);
+		int slot = hash & (FLOW_SLOTS - 1);
+		int count = this.flowCounts[slot]++;
+		if(this.flowCounts[slot] >= this.sampleRate){
+			this.flowCounts[slot] = 0;
+		}
+		return count == 0;
+	}
+
+	public synchronized State getState(){
+		return this.state;
+	}
+
+	public long getDropped(){
+		return this.dropped.get();
+	}
+
+	public long getSampled(){
+		return this.sampled.get();
+	}
+
+	public void setSampleRate(int sampleRate){
+		this.sampleRate = Math.max(sampleRate, 1);
+	}
+
+	public void setSampleAfter(long sampleAfterMillis){
+		this.sampleAfterNanos = sampleAfterMillis * NANOS_PER_MILLI;
+	}
+
+	public void setDisableAfter(long disableAfterMillis){
+		this.disableAfterNanos = disableAfterMillis * NANOS_PER_MILLI;
+	}
+}
@@ -103,7 +103,9 @@ public class PortConfig {
 	 */
 	
 	public boolean vlanAllowed(short vlanId){
-		log.debug("Checking the availability of vlan:" + vlanId);
+		if(log.isDebugEnabled()){
+			log.debug("Checking the availability of vlan:" + vlanId);
+		}
 		return vlanRange.getVlanAvail(vlanId);
 	}
 	
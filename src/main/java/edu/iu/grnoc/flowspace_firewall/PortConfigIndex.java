@@ -0,0 +1,95 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.util.Map;
+
+/**
+ * Immutable open addressed table of openflow port number to PortConfig.
+ * Lookups are a masked index plus a short linear probe with no boxing
+ * or string hashing.  To change the table build a new one and swap it in.
+ * @author aragusa
+ *
+ */
+public final class PortConfigIndex {
+
+	private final short[] portIds;
+	private final PortConfig[] configs;
+	private final int mask;
+	private final int size;
+
+	/**
+	 * creates an empty index
+	 */
+	public PortConfigIndex(){
+		this.portIds = new short[1];
+		this.configs = new PortConfig[1];
+		this.mask = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * creates an index from a map of openflow port number to PortConfig
+	 * @param ports
+	 */
+	public PortConfigIndex(Map<Short, PortConfig> ports){
+		//keep the table at most half full so probes stay short
+		int capacity = 1;
+		while(capacity < ports.size() * 2){
+			capacity <<= 1;
+		}
+		this.portIds = new short[capacity];
+		this.configs = new PortConfig[capacity];
+		this.mask = capacity - 1;
+		int count = 0;
+		for(Map.Entry<Short, PortConfig> entry : ports.entrySet()){
+			if(entry.getValue() == null){
+				continue;
+			}
+			short portId = entry.getKey();
+			int idx = (portId & 0xffff) & this.mask;
+			while(this.configs[idx] != null){
+				idx = (idx + 1) & this.mask;
+			}
+			this.portIds[idx] = portId;
+			this.configs[idx] = entry.getValue();
+			count++;
+		}
+		this.size = count;
+	}
+
+	/**
+	 * returns the PortConfig for the openflow port number
+	 * or null if the port is not in the index
+	 * @param portId
+	 * @return PortConfig
+	 */
+	public PortConfig get(short portId){
+		int idx = (portId & 0xffff) & this.mask;
+		PortConfig cfg;
+		while((cfg = this.configs[idx]) != null){
+			if(this.portIds[idx] == portId){
+				return cfg;
+			}
+			idx = (idx + 1) & this.mask;
+		}
+		return null;
+	}
+
+	public int size(){
+		return this.size;
+	}
+}
@@ -23,9 +23,11 @@ import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.socket.*;
 import org.openflow.protocol.OFError;
 import org.openflow.protocol.OFError.OFBadRequestCode;
@@ -42,6 +44,7 @@ import org.openflow.protocol.Wildcards;
 import org.openflow.protocol.OFPortStatus.OFPortReason;
 import org.openflow.protocol.OFStatisticsReply;
 import org.openflow.protocol.OFStatisticsRequest;
+import org.openflow.protocol.OFType;
 import org.openflow.protocol.action.OFAction;
 import org.openflow.protocol.action.OFActionOutput;
 import org.openflow.protocol.action.OFActionType;
@@ -57,7 +60,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.floodlightcontroller.core.*;
-import net.floodlightcontroller.packet.Ethernet;
 
 /**
  * Proxies all requests to and from the
@@ -69,28 +71,41 @@ import net.floodlightcontroller.packet.Ethernet;
 public class Proxy {
 
 	private IOFSwitch mySwitch;
+	//shared by every proxy on the switch
+	private SwitchWriteCoalescer writer;
 	private SocketChannel myController;
 	private Slicer mySlicer;
 	private OFControllerChannelHandler ofcch;
 	private FlowSpaceFirewall parent;
 	private XidMap xidMap;
+	//switch round trip time by the type of message sent
+	private ConcurrentHashMap<OFType, LatencyHistogram> latency;
+	private static final OFType[] TYPES = OFType.values();
 	
 	
 	private static final Logger log = LoggerFactory.getLogger(Proxy.class);
 	private Integer flowCount;
 	private Boolean adminStatus;
 	private RateTracker packetInRate;
+	private PacketInGovernor packetInGovernor;
+	//packet ins shed because the controller was not keeping up
+	private AtomicLong packetInDrops;
 	private List<FlowTimeout> timeouts;
 		
 	public Proxy(IOFSwitch switchImp, Slicer slicer, FlowSpaceFirewall fsf){
 		mySlicer = slicer;
 		mySwitch = switchImp;
 		mySlicer.setSwitch(mySwitch);
+		writer = SwitchWriteCoalescer.getInstance(mySwitch);
 		parent = fsf;
 		flowCount = 0;
 		xidMap = new XidMap();
+		latency = new ConcurrentHashMap<OFType, LatencyHistogram>();
 		adminStatus = mySlicer.getAdminState();
-		packetInRate = new RateTracker(100,slicer.getPacketInRate());
+		packetInRate = new RateTracker(slicer.getPacketInBurst(),slicer.getPacketInRate());
+		packetInGovernor = new PacketInGovernor(packetInRate, slicer.getPacketInSampleRate(),
+				PacketInGovernor.DEFAULT_SAMPLE_AFTER_MILLIS, slicer.getPacketInDisableAfter());
+		packetInDrops = new AtomicLong(0);
 		timeouts = Collections.synchronizedList( new ArrayList<FlowTimeout>());
 		
 	}
@@ -118,6 +133,14 @@ public class Proxy {
 		return this.packetInRate.getRate();
 	}
 	
+	public long getPacketInDrops(){
+		return this.packetInDrops.get();
+	}
+	
+	public PacketInGovernor getPacketInGovernor(){
+		return this.packetInGovernor;
+	}
+	
 	public List<FlowTimeout> getTimeouts(){
 		return this.timeouts;
 	}
@@ -146,11 +169,7 @@ public class Proxy {
 			deletes.add(flow);
 			this.flowCount = this.flowCount - 1;
 		}
-		try {
-			this.mySwitch.write(deletes, null);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		this.writer.write(deletes);
 		
 	}
 	
@@ -158,6 +177,10 @@ public class Proxy {
 		return this.mySwitch;
 	}
 	
+	public SwitchWriteCoalescer getWriteCoalescer(){
+		return this.writer;
+	}
+	
 	/**
 	 * connects to the new channel
 	 * @param channel
@@ -169,11 +192,16 @@ public class Proxy {
 		if(myController != null && myController.isConnected()){
 			return;
 		}
+		if(myController != null){
+			this.writer.getBackpressure().removeReader(myController);
+		}
 		myController = channel;
 		ofcch =(OFControllerChannelHandler)myController.getPipeline()
 				.getContext("handler").getHandler();
 		ofcch.setSwitch(mySwitch);
 		ofcch.setProxy(this);
+		//stop reading from the controller while the switch is behind
+		this.writer.getBackpressure().addReader(myController);
 
 		myController.connect(mySlicer.getControllerAddress());
 	}
@@ -249,6 +277,12 @@ public class Proxy {
 		this.mySlicer = newSlicer;
 		this.mySlicer.setSwitch(this.mySwitch);
 		this.packetInRate.setRate(this.getSlicer().getPacketInRate());
+		this.packetInRate.setBurst(this.getSlicer().getPacketInBurst());
+		this.packetInGovernor.setSampleRate(this.getSlicer().getPacketInSampleRate());
+		this.packetInGovernor.setDisableAfter(this.getSlicer().getPacketInDisableAfter());
+		if(ofcch != null){
+			ofcch.setQueueLimits(this.mySlicer.getMaxQueuedBytes(), this.mySlicer.getMaxQueuedMessages());
+		}
 	}
 	
 	/**
@@ -258,6 +292,7 @@ public class Proxy {
 		if(myController == null){
 			return;
 		}
+		this.writer.getBackpressure().removeReader(myController);
 		if(myController.isConnected()){
 			myController.disconnect();
 		}
@@ -276,11 +311,44 @@ public class Proxy {
 		
 		int switchId = this.mySwitch.getNextTransactionId();
 		int controllerId = msg.getXid();
-		xidMap.put(switchId, controllerId);
+		xidMap.put(switchId, controllerId, msg.getType().ordinal(), System.nanoTime());
 		msg.setXid(switchId);
 		
 	}
 	
+	/**
+	 * records how long the switch took to answer the message
+	 * we sent with this xid
+	 * @param xid the switch xid of the reply
+	 */
+	private void recordLatency(int xid){
+		long now = System.nanoTime();
+		try{
+			long sent = xidMap.getSentTime(xid);
+			if(sent == 0){
+				return;
+			}
+			OFType type = TYPES[xidMap.getType(xid)];
+			LatencyHistogram histogram = this.latency.get(type);
+			if(histogram == null){
+				this.latency.putIfAbsent(type, new LatencyHistogram());
+				histogram = this.latency.get(type);
+			}
+			histogram.record(now - sent);
+		}catch(NoSuchElementException e){
+			//mapping went away before we could time it
+		}
+	}
+	
+	/**
+	 * returns the switch round trip time histograms for this slice
+	 * keyed by the type of message that was sent to the switch
+	 * @return Map of message type to histogram
+	 */
+	public Map<OFType, LatencyHistogram> getLatencyHistograms(){
+		return Collections.unmodifiableMap(this.latency);
+	}
+	
 	private synchronized void updateFlowCount(int change){
 		this.flowCount += change;
 	}
@@ -318,19 +386,25 @@ public class Proxy {
 	public void checkExpiredFlows(){
 		log.debug("Checking for expired flows");
 		Iterator<FlowTimeout> it = this.timeouts.iterator();
-		while(it.hasNext()){
-			FlowTimeout timeout = it.next();
-			if(timeout.isExpired()){
-				log.debug("Removing Flow that has timed out");
-				it.remove();
-				OFFlowMod flow = timeout.getFlow();
-				flow.setOutPort(OFPort.OFPP_NONE);
-				flow.setCommand(OFFlowMod.OFPFC_DELETE_STRICT);
-				flow.setHardTimeout((short)0);
-				flow.setIdleTimeout((short)0);
-				flow.setFlags(OFFlowMod.OFPFF_SEND_FLOW_REM);
-				this.toSwitch((OFMessage) flow,  timeout.getContext());				
+		//send all the deletes as one batch
+		WriteTrain.begin();
+		try{
+			while(it.hasNext()){
+				FlowTimeout timeout = it.next();
+				if(timeout.isExpired()){
+					log.debug("Removing Flow that has timed out");
+					it.remove();
+					OFFlowMod flow = timeout.getFlow();
+					flow.setOutPort(OFPort.OFPP_NONE);
+					flow.setCommand(OFFlowMod.OFPFC_DELETE_STRICT);
+					flow.setHardTimeout((short)0);
+					flow.setIdleTimeout((short)0);
+					flow.setFlags(OFFlowMod.OFPFF_SEND_FLOW_REM);
+					this.toSwitch((OFMessage) flow,  timeout.getContext());				
+				}
 			}
+		}finally{
+			WriteTrain.end();
 		}
 	}
 	
@@ -450,12 +524,7 @@ public class Proxy {
 		}
 		log.error("Sending messages: " + messages.toString());		
 		mapXids(messages);
-		try {
-			mySwitch.write(messages, cntx);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		mySwitch.flush();
+		this.writer.write(messages, cntx);
 	}
 	
 	private void handleStatsRequest(OFMessage msg){
@@ -751,8 +820,8 @@ public class Proxy {
 	public void toSwitch(OFMessage msg, FloodlightContext cntx){
 		//first figure out what the message is
 		log.debug("Proxy Slicing request of type: " + msg.getType());
-		if(!this.mySlicer.isOkToProcessMessage()){
-			log.warn("Switch: "+this.getSlicer().getSwitchName()+"Slice:"+this.mySlicer.getSliceName()+"Rate limit exceeded");
+		if(!this.mySlicer.isOkToProcessMessage(msg.getType())){
+			log.warn("Switch: "+this.getSlicer().getSwitchName()+"Slice:"+this.mySlicer.getSliceName()+"Rate limit exceeded for " + MessageBudget.MessageClass.classify(msg.getType()));
 			OFError error = new OFError(OFError.OFErrorType.OFPET_BAD_REQUEST);
 			error.setErrorCode(OFBadRequestCode.OFPBRC_EPERM);
 			this.sendError((OFMessage)msg,error);
@@ -777,12 +846,7 @@ public class Proxy {
 					}else{
 						log.debug("PacketOut is allowed");
 						mapXids(allowed);
-						try {
-							mySwitch.write(allowed, cntx);
-						} catch (IOException e) {
-							e.printStackTrace();
-						}
-						mySwitch.flush();
+						this.writer.write(allowed, cntx);
 					}
 				}else{
 					List<OFMessage> allowed = this.mySlicer.allowedPacketOut((OFPacketOut)msg);
@@ -796,12 +860,7 @@ public class Proxy {
 					}else{
 						log.debug("PacketOut is allowed");
 						mapXids(allowed);
-						try {
-							mySwitch.write(allowed, cntx);
-						} catch (IOException e) {
-							e.printStackTrace();
-						}
-						mySwitch.flush();
+						this.writer.write(allowed, cntx);
 					}
 				}
 				return;
@@ -824,41 +883,10 @@ public class Proxy {
 		}
 
 		
+		//header lengths were already checked by the OFMessageLengthDecoder
 		mapXids(msg);
-
-		if(!this.valid_header(msg)){
-			//invalid packet don't send it back so we cant send an error
-			//just log and drop it
-			log.error("Slice " + this.getSlicer().getSliceName() + " to switch " + this.mySlicer.getSwitchName() + "  Invalid Header Rejecting!");
-			return;
-		}
-		
-		try {
-			mySwitch.write(msg, cntx);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		mySwitch.flush();
-		
-	}
-	
-	/**
-	 * 
-	 */
-	
-	public boolean valid_header(OFMessage msg){
-		//verify the length is what it claims
-		ChannelBuffer buf = ChannelBuffers.buffer(msg.getLength());
-		try{
-			msg.writeTo(buf);
-		}catch(Exception e){
-			return false;
-		}
-		int size = buf.readableBytes();
-		if(size != msg.getLength())
-			return false;
+		this.writer.write(msg, cntx);
 		
-		return true;
 	}
 	
 	/**
@@ -872,48 +900,72 @@ public class Proxy {
 			return;
 		}
 		
-		log.debug("Proxy Handling message of type: " + msg.getType());
+		if(log.isDebugEnabled()){
+			log.debug("Proxy Handling message of type: " + msg.getType());
+		}
 		int xid = msg.getXid();
 		switch(msg.getType()){
 		case PACKET_IN:
 			OFPacketIn pcktIn = (OFPacketIn) msg;
-			OFMatch match = new OFMatch();
 			if(pcktIn.getPacketData().length <= 0){
 				log.debug("No Packet data not slicing");
 				//no packet not slicing...
 				return;
 			}
-			match.loadFromPacket(pcktIn.getPacketData(),pcktIn.getInPort());
-			OFFlowMod flowMod = new OFFlowMod();
-			flowMod.setMatch(match);
-			List <OFFlowMod> allowed = this.mySlicer.allowedFlows(flowMod);
-			if(allowed.size() == 0){
-				log.debug("Packet in Not allowed for slice: "+this.mySlicer.getSliceName());
+			//only the in port and vlan tag matter so read them straight
+			//from the packet, anything we can't parse takes the full path
+			int vlanId = PacketHeader.getVlanId(pcktIn.getPacketData());
+			boolean allowed;
+			if(vlanId != PacketHeader.MALFORMED && pcktIn.getInPort() != 0){
+				allowed = this.mySlicer.isPacketInAllowed(pcktIn.getInPort(), (short)vlanId);
+			}else{
+				OFMatch match = new OFMatch();
+				match.loadFromPacket(pcktIn.getPacketData(),pcktIn.getInPort());
+				OFFlowMod flowMod = new OFFlowMod();
+				flowMod.setMatch(match);
+				allowed = this.mySlicer.allowedFlows(flowMod).size() != 0;
+			}
+			if(!allowed){
+				if(log.isDebugEnabled()){
+					log.debug("Packet in Not allowed for slice: "+this.mySlicer.getSliceName());
+				}
 				return;
 			}
 			
-			if(this.packetInRate.okToProcess()){
-				//add the packet buffer id to our buffer id list
-				this.mySlicer.addBufferId(pcktIn.getBufferId(), pcktIn.getPacketData());
-				//we add the packet with the vlan id on it but send a modified packet in to the controller
-				//without the vlan tag
-				if(this.mySlicer.getTagManagement()){
-					log.debug("Processing Packet in for Managed Tag mode");
-					Ethernet newPkt = new Ethernet();
-					byte[] pktData = pcktIn.getPacketData();
-					newPkt.deserialize(pktData,0,pktData.length);
-					newPkt.setEtherType(newPkt.getEtherType());
-					newPkt.setVlanID(Ethernet.VLAN_UNTAGGED);
-					pcktIn.setPacketData(newPkt.serialize());
-				}
-				break;
-			}else{
+			//over the rate we drop, then sample and only disable the
+			//slice if it stays over the rate
+			PacketInGovernor.Verdict verdict = this.packetInGovernor.check(pcktIn.getInPort(), pcktIn.getPacketData());
+			if(verdict == PacketInGovernor.Verdict.DISABLE){
 				log.error("Packet in Rate for Slice: " +
 							this.getSlicer().getSliceName() + ":" + this.getSlicer().getSwitchName() +
-							" has passed the packet in rate limit Disabling slice!!!!");
+							" has been over the packet in rate limit for " + this.getSlicer().getPacketInDisableAfter() + "ms Disabling slice!!!!");
 				this.setAdminStatus(false);
 				return;
 			}
+			if(verdict == PacketInGovernor.Verdict.DROP){
+				return;
+			}
+			
+			if(ofcch.isSaturated()){
+				//controller is behind, drop the newest packet ins
+				//but keep sending replies and everything else
+				if(this.packetInDrops.incrementAndGet() % 1000 == 1){
+					log.warn("Controller for slice " + this.mySlicer.getSliceName() + ":" + this.mySlicer.getSwitchName()
+							+ " is not keeping up, dropped " + this.packetInDrops.get() + " packet ins");
+				}
+				return;
+			}
+			//add the packet buffer id to our buffer id list
+			this.mySlicer.addBufferId(pcktIn.getBufferId(), pcktIn.getPacketData());
+			//we add the packet with the vlan id on it but send a modified packet in to the controller
+			//without the vlan tag
+			if(this.mySlicer.getTagManagement()){
+				log.debug("Processing Packet in for Managed Tag mode");
+				byte[] pktData = PacketHeader.stripVlan(pcktIn.getPacketData());
+				pcktIn.setPacketData(pktData);
+				pcktIn.setLengthU(OFPacketIn.MINIMUM_LENGTH + pktData.length);
+			}
+			break;
 			
 		case PORT_STATUS:
 			//only send port status messages
@@ -934,7 +986,7 @@ public class Proxy {
 				//nothing to do here
 				break;
 			case OFPPR_DELETE:
-				//nothing to do here
+				this.mySlicer.removePortId(port.getName());
 				break;
 			}
 			
@@ -942,6 +994,7 @@ public class Proxy {
 		case ERROR:
 			if(xidMap.containsKey(xid)){
 				msg.setXid(xidMap.get(xid));
+				this.recordLatency(xid);
 				xidMap.remove(xid);
 				OFError error = (OFError) msg;
 				OFMessage error_msg = null;
@@ -993,6 +1046,7 @@ public class Proxy {
 		case BARRIER_REPLY:
 			if(xidMap.containsKey(xid)){	
 				msg.setXid(xidMap.get(xid));	
+				this.recordLatency(xid);
 				//ISSUE=7276 delete all keys up to and including the barrier, but not any new xids that have come in since the barrier request
 				 xidMap.removeToKey(xid);
 			}else{
@@ -15,73 +15,150 @@
 */
 package edu.iu.grnoc.flowspace_firewall;
 
-import org.apache.commons.collections4.queue.CircularFifoQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Date;
-
+/**
+ * Lock free token bucket rate limiter.  The bucket holds up to burst
+ * tokens and refills at rate tokens a second, it is kept as the single
+ * time at which the bucket will be full again (the generic cell rate
+ * algorithm) so a check is one CAS on one long and allocates nothing.
+ * Also keeps an exponentially weighted moving average of the rate of
+ * allowed events for reporting.
+ * @author aragusa
+ *
+ */
 public class RateTracker {
 
-	private CircularFifoQueue<Date> myFifo;
-	private int myRate;
-	private static final Logger log = LoggerFactory.getLogger(Proxy.class);
-	
-	public RateTracker(int size, int rate){
-		myRate = rate;
-		myFifo = new CircularFifoQueue<Date>(size);
+	//time constant of the reported rate average
+	public static final double EWMA_SECONDS = 5.0;
+	private static final long NANOS_PER_SECOND = 1000000000L;
+	private static final double EWMA_NANOS = EWMA_SECONDS * NANOS_PER_SECOND;
+
+	private static final Logger log = LoggerFactory.getLogger(RateTracker.class);
+
+	//times are nanos since the tracker was created
+	private final long origin;
+	//when the bucket will be full again, it is full whenever this is in the past
+	private final AtomicLong fullAt;
+	private volatile int myRate;
+	//0 means one second worth of the rate
+	private volatile int burst;
+	//nanos per token, 0 when nothing is allowed
+	private volatile long interval;
+
+	//the average is the rate at lastEvent, it decays from there
+	private final AtomicLong lastEvent;
+	private final AtomicLong rateBits;
+
+	/**
+	 * @param burst number of events allowed back to back, 0 or less
+	 * for as many as the rate allows in one second
+	 * @param rate events a second allowed over time
+	 */
+	public RateTracker(int burst, int rate){
+		this.origin = System.nanoTime();
+		this.fullAt = new AtomicLong(0);
+		this.lastEvent = new AtomicLong(0);
+		this.rateBits = new AtomicLong(Double.doubleToLongBits(0));
+		this.setBurst(burst);
+		this.setRate(rate);
 	}
-	
-	public synchronized boolean okToProcess(){
-		log.debug("checking on the rate for this slice");
-		Date now = new Date();
-		if(this.getRate(now) < myRate){
-			log.debug("rate was ok, allowing, and updating");
-			myFifo.add(now);
-			return true;
-		}else{
-			log.debug("rate is over, not allowing");
-			return false;
-		}
+
+	private long now(){
+		return System.nanoTime() - this.origin;
 	}
-	
-	
-	public synchronized double getRate(){
-		if(myFifo.size() == 0){
-			log.debug("circular queue is empty, returning 0");
-			return 0;
+
+	/**
+	 * takes a token from the bucket
+	 * @return true if there was one and the event may go ahead
+	 */
+	public boolean okToProcess(){
+		long interval = this.interval;
+		if(interval == 0){
+			log.debug("rate is 0, not allowing");
+			return false;
 		}
-		log.debug("calculating current rate");
-		long end = myFifo.get(myFifo.size() - 1).getTime();
-		long start = myFifo.get(0).getTime();
-		log.debug("#packets = " + myFifo.size() + " / end = " + end + " start = " + start);
-		if(end - start <= 0){
-			return 0;
+		long capacity = this.burst > 0 ? interval * this.burst : Math.max(NANOS_PER_SECOND, interval);
+		long now = this.now();
+		while(true){
+			long full = this.fullAt.get();
+			long next = Math.max(full, now) + interval;
+			if(next - now > capacity){
+				log.debug("rate is over, not allowing");
+				return false;
+			}
+			if(this.fullAt.compareAndSet(full, next)){
+				this.recordEvent(now);
+				return true;
+			}
 		}
-		return (myFifo.size() / ((end - start)/1000.0));
 	}
-	
-	public synchronized double getRate(Date now){
-		if(myFifo.size() == 0){
-			log.debug("circular queue is empty, returning 0");
-			return 0;
+
+	private void recordEvent(long now){
+		//each event decays the average over the time since the one before it
+		long previous = this.lastEvent.getAndSet(now);
+		double decay = Math.exp(-Math.max(now - previous, 0) / EWMA_NANOS);
+		while(true){
+			long bits = this.rateBits.get();
+			double rate = Double.longBitsToDouble(bits) * decay + NANOS_PER_SECOND / EWMA_NANOS;
+			if(this.rateBits.compareAndSet(bits, Double.doubleToLongBits(rate))){
+				return;
+			}
 		}
-		log.debug("calculating current rate");
-		long end = now.getTime() / 1000;
-		long start = myFifo.get(0).getTime() / 1000;
-		log.debug("#packets = " + myFifo.size() + " / end = " + end + " start = " + start);
-		if(end - start <= 0){
+	}
+
+	/**
+	 * returns the moving average of allowed events a second
+	 * @return double
+	 */
+	public double getRate(){
+		return this.getRate(System.nanoTime());
+	}
+
+	/**
+	 * returns the moving average as of a System.nanoTime reading, so
+	 * several trackers can be read at the same instant
+	 * @param nanoTime
+	 * @return double
+	 */
+	double getRate(long nanoTime){
+		double rate = Double.longBitsToDouble(this.rateBits.get());
+		if(rate == 0){
 			return 0;
 		}
-		return (myFifo.size() / (end - start));
+		long since = Math.max(nanoTime - this.origin - this.lastEvent.get(), 0);
+		return rate * Math.exp(-since / EWMA_NANOS);
 	}
-	
+
 	public void setRate(int flowRate){
 		this.myRate = flowRate;
+		if(flowRate <= 0){
+			this.interval = 0;
+		}else{
+			this.interval = Math.max(NANOS_PER_SECOND / flowRate, 1);
+		}
 	}
-	
+
 	public int getMaxRate(){
 		return this.myRate;
 	}
-	
-}
\ No newline at end of file
+
+	public void setBurst(int burst){
+		this.burst = Math.max(burst, 0);
+	}
+
+	/**
+	 * returns the number of events allowed back to back
+	 * @return int
+	 */
+	public int getBurst(){
+		if(this.burst > 0){
+			return this.burst;
+		}
+		return Math.max(this.myRate, 1);
+	}
+
+}
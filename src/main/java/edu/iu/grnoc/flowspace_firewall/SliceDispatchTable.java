@@ -0,0 +1,162 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.ImmutablePort;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable per switch table of (in_port, vlan) to the proxies
+ * whose slice owns that port/vlan combination.  Used to hand a
+ * packet in to its slice without asking every proxy on the switch.
+ * The table is a snapshot, rebuild it whenever the proxies, their
+ * slicers or the switch ports change.
+ * @author aragusa
+ *
+ */
+public final class SliceDispatchTable {
+
+	//vlan slots per port, 0-4095 are tagged and the last one is untagged
+	private static final int VLAN_SLOTS = VLANRange.MAX_VLAN + 2;
+	private static final int UNTAGGED_SLOT = VLANRange.MAX_VLAN + 1;
+
+	private static final Logger log = LoggerFactory.getLogger(SliceDispatchTable.class);
+
+	//open addressed port number -> per vlan owner index
+	private final short[] portIds;
+	private final short[][] vlanOwners;
+	private final int mask;
+	//owner index -> proxies, index 0 is nobody
+	private final List<List<Proxy>> owners;
+
+	/**
+	 * builds the table from every proxy connected to one switch
+	 * @param proxies the proxies for the switch
+	 */
+	public SliceDispatchTable(List<Proxy> proxies){
+		//port number -> vlan slot -> proxies that own it
+		HashMap<Short, List<Proxy>[]> claims = new HashMap<Short, List<Proxy>[]>();
+		for(Proxy p : proxies){
+			Slicer slicer = p.getSlicer();
+			IOFSwitch sw = p.getSwitch();
+			if(sw == null){
+				continue;
+			}
+			for(ImmutablePort port : sw.getPorts()){
+				PortConfig ptCfg = slicer.getPortConfig(port.getPortNumber());
+				if(ptCfg == null){
+					continue;
+				}
+				for(Short tag : ptCfg.getVlanRange().getAvailableTags()){
+					this.claim(claims, port.getPortNumber(), tag, p);
+				}
+			}
+		}
+
+		int capacity = 1;
+		while(capacity < claims.size() * 2){
+			capacity <<= 1;
+		}
+		this.portIds = new short[capacity];
+		this.vlanOwners = new short[capacity][];
+		this.mask = capacity - 1;
+		this.owners = new ArrayList<List<Proxy>>();
+		this.owners.add(Collections.<Proxy>emptyList());
+
+		//proxies claiming the same slots share one owner entry
+		HashMap<List<Proxy>, Short> ownerIds = new HashMap<List<Proxy>, Short>();
+		for(Map.Entry<Short, List<Proxy>[]> entry : claims.entrySet()){
+			short[] slots = new short[VLAN_SLOTS];
+			List<Proxy>[] claimed = entry.getValue();
+			for(int slot = 0; slot < VLAN_SLOTS; slot++){
+				if(claimed[slot] == null){
+					continue;
+				}
+				Short ownerId = ownerIds.get(claimed[slot]);
+				if(ownerId == null){
+					if(claimed[slot].size() > 1){
+						log.warn("Port " + entry.getKey() + " vlan " + slot + " is claimed by " + claimed[slot].size() + " slices");
+					}
+					ownerId = (short)this.owners.size();
+					this.owners.add(Collections.unmodifiableList(claimed[slot]));
+					ownerIds.put(claimed[slot], ownerId);
+				}
+				slots[slot] = ownerId;
+			}
+			int idx = (entry.getKey() & 0xffff) & this.mask;
+			while(this.vlanOwners[idx] != null){
+				idx = (idx + 1) & this.mask;
+			}
+			this.portIds[idx] = entry.getKey();
+			this.vlanOwners[idx] = slots;
+		}
+	}
+
+	//generic arrays can not be created directly
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static List<Proxy>[] newSlots(){
+		return new List[VLAN_SLOTS];
+	}
+
+	private void claim(HashMap<Short, List<Proxy>[]> claims, short portId, short vlanId, Proxy p){
+		List<Proxy>[] slots = claims.get(portId);
+		if(slots == null){
+			slots = newSlots();
+			claims.put(portId, slots);
+		}
+		int slot = vlanId == VLANRange.UNTAGGED ? UNTAGGED_SLOT : vlanId;
+		if(slots[slot] == null){
+			slots[slot] = new ArrayList<Proxy>(1);
+		}
+		slots[slot].add(p);
+	}
+
+	/**
+	 * returns the proxies that own a packet from the in port and
+	 * vlan, an empty list if no slice owns it.  Never allocates
+	 * @param inPort the openflow port the packet arrived on
+	 * @param vlanId the vlan id or VLANRange.UNTAGGED
+	 * @return List of proxies, must not be modified
+	 */
+	public List<Proxy> getOwners(short inPort, int vlanId){
+		int slot;
+		if(vlanId == VLANRange.UNTAGGED){
+			slot = UNTAGGED_SLOT;
+		}else if(vlanId > 0 && vlanId <= VLANRange.MAX_VLAN){
+			slot = vlanId;
+		}else{
+			return this.owners.get(0);
+		}
+		int idx = (inPort & 0xffff) & this.mask;
+		short[] slots;
+		while((slots = this.vlanOwners[idx]) != null){
+			if(this.portIds[idx] == inPort){
+				return this.owners.get(slots[slot]);
+			}
+			idx = (idx + 1) & this.mask;
+		}
+		return this.owners.get(0);
+	}
+}
@@ -16,6 +16,7 @@
 package edu.iu.grnoc.flowspace_firewall;
 
 import java.net.InetSocketAddress;
+import java.util.Collection;
 import java.util.List;
 
 import net.floodlightcontroller.core.IOFSwitch;
@@ -23,6 +24,7 @@ import net.floodlightcontroller.core.IOFSwitch;
 import org.openflow.protocol.OFFlowMod;
 import org.openflow.protocol.OFMessage;
 import org.openflow.protocol.OFPacketOut;
+import org.openflow.protocol.OFType;
 
 public interface Slicer {
 
@@ -30,19 +32,26 @@ public interface Slicer {
 	List <OFFlowMod> managedFlows(OFFlowMod flow);
 	List<OFMessage> allowedPacketOut(OFPacketOut output);
 	List<OFMessage> managedPacketOut(OFPacketOut output);
+	boolean isPacketInAllowed(short inPort, short vlanId);
 	void setController(InetSocketAddress addr);
 	InetSocketAddress getControllerAddress();
 	void setSwitch(IOFSwitch mySwitch);
 	void setMaxFlows(int numberOfFlows);
 	void setFlowRate(int flowRate);
+	void setFlowBurst(int flowBurst);
+	int getFlowBurst();
 	int getMaxFlowRate();
+	void setMessageRate(MessageBudget.MessageClass cls, int rate);
+	void setMessageBurst(MessageBudget.MessageClass cls, int burst);
+	MessageBudget getMessageBudget();
 	boolean isGreaterThanMaxFlows(int numberOfFlows);
 	boolean isPortPartOfSlice(String portName);
 	boolean isPortPartOfSlice(short portId);
 	void setPortConfig(String portName, PortConfig pConfig);
 	PortConfig getPortConfig(String portName);
 	PortConfig getPortConfig(short portId);
-	boolean isOkToProcessMessage();
+	Collection<PortConfig> getPortConfigs();
+	boolean isOkToProcessMessage(OFType type);
 	boolean hasOverlap(Slicer otherSlicer);
 	String getSliceName();
 	void setSliceName(String name);
@@ -50,9 +59,22 @@ public interface Slicer {
 	int getMaxFlows();
 	int getPacketInRate();
 	void setPacketInRate(int rate);
+	int getPacketInBurst();
+	void setPacketInBurst(int burst);
+	int getPacketInSampleRate();
+	void setPacketInSampleRate(int sampleRate);
+	long getPacketInDisableAfter();
+	void setPacketInDisableAfter(long millis);
+	int getMaxQueuedBytes();
+	void setMaxQueuedBytes(int bytes);
+	int getMaxQueuedMessages();
+	void setMaxQueuedMessages(int messages);
 	IOFSwitch getSwitch();
+	long getFlowCacheHits();
+	long getFlowCacheMisses();
 	void addBufferId(int bufferId, byte[] packetData);
 	void setPortId(String portName, short portId);
+	void removePortId(String portName);
 	void setAdminState(boolean state);
 	boolean getAdminState();
 	void setTagManagement(boolean tagMgmt);
@@ -0,0 +1,310 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.IOFSwitch;
+
+import org.jboss.netty.channel.Channel;
+import org.openflow.protocol.OFBarrierRequest;
+import org.openflow.protocol.OFMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Flow control between a switch and the controllers of its slices.
+ * IOFSwitch does not tell us how much is sitting in the switch's
+ * write buffer, so we track the bytes written to the switch that it
+ * has not acknowledged yet.  A barrier request is added to the writes
+ * every so often, when its reply comes back everything written before
+ * it has been handled by the switch.  Once the unacknowledged bytes
+ * pass the high watermark reading from every controller channel of
+ * the switch is suspended, so TCP throttles the controllers, and it
+ * is resumed when the switch catches up below the low watermark.
+ * If the switch stops answering barriers while paused, because a
+ * reply was lost or it answered with an error, the controllers are
+ * resumed after the pause timeout.
+ * @author aragusa
+ *
+ */
+public class SwitchBackpressure {
+
+	public static final int DEFAULT_HIGH_WATERMARK = 262144;
+	public static final int DEFAULT_LOW_WATERMARK = 65536;
+	public static final int DEFAULT_BARRIER_INTERVAL = 32768;
+	public static final long DEFAULT_PAUSE_TIMEOUT_MILLIS = 5000;
+
+	private static final Logger log = LoggerFactory.getLogger(SwitchBackpressure.class);
+
+	private final IOFSwitch sw;
+	private final int highWatermark;
+	private final int lowWatermark;
+	private final int barrierInterval;
+	private final long pauseTimeoutNanos;
+	//controller channels of the proxies on this switch
+	private final CopyOnWriteArraySet<Channel> readers;
+
+	//everything below is guarded by this
+	private long written = 0;
+	private long acked = 0;
+	private long sinceBarrier = 0;
+	//outstanding barriers as {xid, bytes written up to the barrier}
+	private final LinkedList<long[]> barriers;
+	private boolean paused = false;
+	private long pauses = 0;
+	private long stalls = 0;
+	//when the switch last made progress while paused
+	private long progressAt = 0;
+	private ScheduledFuture<?> deadline;
+
+	//one timer for the pause deadlines of every switch
+	private static ScheduledExecutorService timer;
+
+	public SwitchBackpressure(IOFSwitch sw){
+		this(sw, DEFAULT_HIGH_WATERMARK, DEFAULT_LOW_WATERMARK, DEFAULT_BARRIER_INTERVAL);
+	}
+
+	public SwitchBackpressure(IOFSwitch sw, int highWatermark, int lowWatermark, int barrierInterval){
+		this(sw, highWatermark, lowWatermark, barrierInterval, DEFAULT_PAUSE_TIMEOUT_MILLIS);
+	}
+
+	public SwitchBackpressure(IOFSwitch sw, int highWatermark, int lowWatermark, int barrierInterval, long pauseTimeoutMillis){
+		this.sw = sw;
+		this.highWatermark = highWatermark;
+		this.lowWatermark = lowWatermark;
+		this.barrierInterval = barrierInterval;
+		this.pauseTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(pauseTimeoutMillis);
+		this.readers = new CopyOnWriteArraySet<Channel>();
+		this.barriers = new LinkedList<long[]>();
+	}
+
+	private static synchronized ScheduledExecutorService getTimer(){
+		if(timer == null){
+			timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable r){
+					Thread thread = new Thread(r, "BackpressureTimer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return timer;
+	}
+
+	/**
+	 * called with every batch just before it is written to the switch,
+	 * adds a barrier to the batch when one is due and suspends the
+	 * controllers if the switch is too far behind
+	 * @param batch the messages about to be written
+	 * @param batchBytes their total length
+	 */
+	public void beforeWrite(List<OFMessage> batch, int batchBytes){
+		boolean pause = false;
+		synchronized(this){
+			this.written += batchBytes;
+			this.sinceBarrier += batchBytes;
+			long unacked = this.written - this.acked;
+			//always end with a barrier when pausing, its reply resumes us
+			if(this.sinceBarrier >= this.barrierInterval || unacked >= this.highWatermark){
+				OFBarrierRequest barrier = new OFBarrierRequest();
+				int xid = this.sw.getNextTransactionId();
+				barrier.setXid(xid);
+				batch.add(barrier);
+				this.barriers.add(new long[]{xid, this.written});
+				this.sinceBarrier = 0;
+			}
+			if(!this.paused && unacked >= this.highWatermark){
+				this.paused = true;
+				this.pauses++;
+				this.progressAt = System.nanoTime();
+				this.scheduleDeadline(this.pauseTimeoutNanos);
+				this.setReadable(false);
+				pause = true;
+			}
+		}
+		if(pause){
+			log.warn("Switch " + this.sw.getStringId() + " is " + this.getUnackedBytes() + " bytes behind, pausing its controllers");
+		}
+	}
+
+	/**
+	 * handles a barrier reply from the switch
+	 * @param xid
+	 * @return true if it answered one of our barriers and must not be
+	 * handed to any slice
+	 */
+	public boolean barrierReply(int xid){
+		boolean resume = false;
+		synchronized(this){
+			long[] answered = null;
+			for(long[] barrier : this.barriers){
+				if(barrier[0] == xid){
+					answered = barrier;
+					break;
+				}
+			}
+			if(answered == null){
+				return false;
+			}
+			//barriers are answered in order so everything before it is done too
+			Iterator<long[]> it = this.barriers.iterator();
+			while(it.hasNext()){
+				long[] barrier = it.next();
+				it.remove();
+				if(barrier == answered){
+					break;
+				}
+			}
+			this.acked = answered[1];
+			this.progressAt = System.nanoTime();
+			if(this.paused && this.written - this.acked <= this.lowWatermark){
+				this.unpause();
+				resume = true;
+			}
+		}
+		if(resume){
+			log.info("Switch " + this.sw.getStringId() + " caught up, resuming its controllers");
+		}
+		return true;
+	}
+
+	/**
+	 * handles an error from the switch, a failed barrier was still
+	 * handled in order so it counts the same as its reply
+	 * @param xid
+	 * @return true if it answered one of our barriers and must not be
+	 * handed to any slice
+	 */
+	public boolean barrierError(int xid){
+		if(!this.barrierReply(xid)){
+			return false;
+		}
+		log.warn("Switch " + this.sw.getStringId() + " answered flow control barrier " + xid + " with an error");
+		return true;
+	}
+
+	/**
+	 * forgets everything written to the switch and resumes the
+	 * controllers, for when the switch disconnects
+	 */
+	public synchronized void reset(){
+		this.written = 0;
+		this.acked = 0;
+		this.sinceBarrier = 0;
+		this.barriers.clear();
+		if(this.paused){
+			this.unpause();
+		}
+	}
+
+	/**
+	 * resumes the controllers if the switch has not answered a barrier
+	 * for the pause timeout, the outstanding barriers are given up on
+	 */
+	void checkDeadline(){
+		long unacked;
+		synchronized(this){
+			if(!this.paused){
+				return;
+			}
+			long waited = System.nanoTime() - this.progressAt;
+			if(waited < this.pauseTimeoutNanos){
+				//some barrier was answered since, wait out the rest
+				this.scheduleDeadline(this.pauseTimeoutNanos - waited);
+				return;
+			}
+			unacked = this.written - this.acked;
+			this.barriers.clear();
+			this.acked = this.written;
+			this.stalls++;
+			this.unpause();
+		}
+		log.warn("Switch " + this.sw.getStringId() + " did not answer flow control barriers for " + unacked + " bytes, resuming its controllers");
+	}
+
+	//call holding the lock
+	private void scheduleDeadline(long delayNanos){
+		this.deadline = getTimer().schedule(new Runnable(){
+			@Override
+			public void run(){
+				checkDeadline();
+			}
+		}, delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	//call holding the lock
+	private void unpause(){
+		this.paused = false;
+		if(this.deadline != null){
+			this.deadline.cancel(false);
+			this.deadline = null;
+		}
+		this.setReadable(true);
+	}
+
+	/**
+	 * adds a controller channel to pause along with the switch
+	 * @param channel
+	 */
+	public synchronized void addReader(Channel channel){
+		this.readers.add(channel);
+		if(this.paused){
+			channel.setReadable(false);
+		}
+	}
+
+	public void removeReader(Channel channel){
+		this.readers.remove(channel);
+	}
+
+	//call holding the lock, so a channel's readability always
+	//matches the last pause or resume
+	private void setReadable(boolean readable){
+		for(Channel channel : this.readers){
+			channel.setReadable(readable);
+		}
+	}
+
+	public synchronized boolean isPaused(){
+		return this.paused;
+	}
+
+	public synchronized long getUnackedBytes(){
+		return this.written - this.acked;
+	}
+
+	public synchronized long getPauseCount(){
+		return this.pauses;
+	}
+
+	/**
+	 * returns how many pauses ended on the pause timeout
+	 * @return long
+	 */
+	public synchronized long getStallCount(){
+		return this.stalls;
+	}
+}
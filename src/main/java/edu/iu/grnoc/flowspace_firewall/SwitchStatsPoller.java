@@ -0,0 +1,280 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.IOFSwitch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The stats poll cycle of one switch.  Every switch has its own
+ * so a slow switch only delays its own stats, the pollers share the
+ * executor's threads which limits how many switches are polled at once.
+ * A poll starts one interval after the previous one started, or right
+ * away if the previous one took longer than that.
+ * The interval adapts between the min and max after every poll: it is
+ * halved while a large part of the flow table changes between polls,
+ * stretched while nothing changes and never below REPLY_TIME_FACTOR
+ * times how long the switch took to answer.
+ * @author aragusa
+ *
+ */
+public class SwitchStatsPoller implements Runnable {
+
+	public static final long DEFAULT_MIN_INTERVAL_MILLIS = 5 * 1000;
+	public static final long DEFAULT_MAX_INTERVAL_MILLIS = 30 * 1000;
+	public static final long DEFAULT_INTERVAL_MILLIS = 10 * 1000;
+	//a table is busy when at least 1 in this many flows changed
+	public static final int BUSY_CHURN_DIVISOR = 10;
+	//polls take at most about 1/this of the switch's time
+	public static final int REPLY_TIME_FACTOR = 10;
+
+	private static final Logger log = LoggerFactory.getLogger(SwitchStatsPoller.class);
+
+	private final IOFSwitch sw;
+	private final FlowStatCacher cacher;
+	private final ScheduledExecutorService executor;
+	private final long minIntervalMillis;
+	private final long maxIntervalMillis;
+	private volatile long intervalMillis;
+	private volatile boolean cancelled = false;
+	private ScheduledFuture<?> next;
+
+	//poll durations in milliseconds, guarded by this
+	private long polls = 0;
+	private long lastPoll = 0;
+	private long maxPoll = 0;
+	private long totalPoll = 0;
+	private long lastPollTime = 0;
+	private int lastFlows = 0;
+	private int lastChanged = 0;
+
+	/**
+	 * polls at a fixed interval
+	 */
+	public SwitchStatsPoller(IOFSwitch sw, FlowStatCacher cacher, ScheduledExecutorService executor, long intervalMillis){
+		this(sw, cacher, executor, intervalMillis, intervalMillis);
+	}
+
+	public SwitchStatsPoller(IOFSwitch sw, FlowStatCacher cacher, ScheduledExecutorService executor,
+			long minIntervalMillis, long maxIntervalMillis){
+		this.sw = sw;
+		this.cacher = cacher;
+		this.executor = executor;
+		this.minIntervalMillis = minIntervalMillis;
+		this.maxIntervalMillis = Math.max(maxIntervalMillis, minIntervalMillis);
+		this.intervalMillis = Math.min(Math.max(DEFAULT_INTERVAL_MILLIS, this.minIntervalMillis), this.maxIntervalMillis);
+	}
+
+	/**
+	 * starts polling the switch right away
+	 */
+	public void start(){
+		this.schedule(0);
+	}
+
+	/**
+	 * stops polling, a poll that is already running finishes
+	 */
+	public synchronized void cancel(){
+		this.cancelled = true;
+		if(this.next != null){
+			this.next.cancel(false);
+		}
+	}
+
+	public boolean isCancelled(){
+		return this.cancelled;
+	}
+
+	private synchronized void schedule(long delayMillis){
+		if(this.cancelled){
+			return;
+		}
+		try{
+			this.next = this.executor.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+		}catch(RejectedExecutionException e){
+			log.error("Unable to schedule the stats poll for switch " + this.sw.getStringId(), e);
+		}
+	}
+
+	@Override
+	public void run(){
+		if(this.cancelled){
+			return;
+		}
+		long start = System.nanoTime();
+		PollResult result = null;
+		try{
+			result = this.cacher.pollSwitch(this.sw);
+		}catch(RuntimeException e){
+			//never let one bad poll end the cycle
+			log.error("Error polling stats for switch " + this.sw.getStringId(), e);
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		synchronized(this){
+			this.polls++;
+			this.lastPoll = elapsed;
+			this.maxPoll = Math.max(this.maxPoll, elapsed);
+			this.totalPoll += elapsed;
+			this.lastPollTime = System.currentTimeMillis();
+			if(result != null){
+				this.lastFlows = result.getFlows();
+				this.lastChanged = result.getChanged();
+			}
+		}
+		if(elapsed > this.intervalMillis){
+			log.warn("Stats poll of switch " + this.sw.getStringId() + " took " + elapsed + "ms, longer than the " + this.intervalMillis + "ms interval");
+		}
+		long interval = this.nextInterval(this.intervalMillis, elapsed, result);
+		if(interval != this.intervalMillis){
+			log.debug("Stats poll interval of switch " + this.sw.getStringId() + " is now " + interval + "ms");
+			this.intervalMillis = interval;
+		}
+		this.schedule(Math.max(interval - elapsed, 0));
+	}
+
+	/**
+	 * works out the interval until the next poll from the last one
+	 * @param current the current interval
+	 * @param elapsed how long the poll took in milliseconds
+	 * @param result what the poll found, null if it threw
+	 * @return long the next interval in milliseconds
+	 */
+	long nextInterval(long current, long elapsed, PollResult result){
+		long interval = current;
+		if(result == null || result.isFailed()){
+			//the switch is struggling, give it room
+			interval = current * 2;
+		}else if(result.getChanged() < 0){
+			//nothing to compare the first poll with
+		}else if(result.getChanged() > 0 && (long)result.getChanged() * BUSY_CHURN_DIVISOR >= result.getFlows()){
+			interval = current / 2;
+		}else if(result.getChanged() == 0){
+			interval = current + current / 2;
+		}
+		interval = Math.max(interval, elapsed * REPLY_TIME_FACTOR);
+		return Math.min(Math.max(interval, this.minIntervalMillis), this.maxIntervalMillis);
+	}
+
+	public IOFSwitch getSwitch(){
+		return this.sw;
+	}
+
+	/**
+	 * returns the current interval between the start of two polls
+	 * @return long
+	 */
+	public long getIntervalMillis(){
+		return this.intervalMillis;
+	}
+
+	public long getMinIntervalMillis(){
+		return this.minIntervalMillis;
+	}
+
+	public long getMaxIntervalMillis(){
+		return this.maxIntervalMillis;
+	}
+
+	/**
+	 * returns the number of flows in the table at the last poll
+	 * @return int
+	 */
+	public synchronized int getFlowCount(){
+		return this.lastFlows;
+	}
+
+	/**
+	 * returns the number of flows that appeared, went away or had
+	 * their counters change between the last two polls
+	 * @return int
+	 */
+	public synchronized int getChangedFlows(){
+		return this.lastChanged;
+	}
+
+	public synchronized long getPollCount(){
+		return this.polls;
+	}
+
+	/**
+	 * returns how long the last poll took in milliseconds
+	 * @return long
+	 */
+	public synchronized long getLastPollMillis(){
+		return this.lastPoll;
+	}
+
+	public synchronized long getMaxPollMillis(){
+		return this.maxPoll;
+	}
+
+	public synchronized double getMeanPollMillis(){
+		if(this.polls == 0){
+			return 0;
+		}
+		return (double)this.totalPoll / this.polls;
+	}
+
+	/**
+	 * returns when the last poll finished in milliseconds since the epoch,
+	 * 0 if the switch has not been polled yet
+	 * @return long
+	 */
+	public synchronized long getLastPollTime(){
+		return this.lastPollTime;
+	}
+
+	/**
+	 * what one poll of the switch found
+	 */
+	public static final class PollResult {
+		private final int flows;
+		private final int changed;
+		private final boolean failed;
+
+		/**
+		 * @param flows flows in the table
+		 * @param changed flows that appeared, went away or had their
+		 * counters change since the last poll, -1 if there was no last poll
+		 * @param failed true if the switch did not answer
+		 */
+		public PollResult(int flows, int changed, boolean failed){
+			this.flows = flows;
+			this.changed = changed;
+			this.failed = failed;
+		}
+
+		public int getFlows(){
+			return this.flows;
+		}
+
+		public int getChanged(){
+			return this.changed;
+		}
+
+		public boolean isFailed(){
+			return this.failed;
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IOFSwitch;
+
+import org.openflow.protocol.OFMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the messages every proxy of a switch sends to it and
+ * writes them to the switch as one list with a single flush.
+ * Inside a WriteTrain writes are queued and flushed when the train
+ * ends, or earlier once the queued bytes or the age of the oldest
+ * queued message pass the configured thresholds.  Outside of a train
+ * every write is flushed right away.  Each message keeps the
+ * FloodlightContext it was written with, messages in a row with the
+ * same context reach the switch in one write.
+ * @author aragusa
+ *
+ */
+public class SwitchWriteCoalescer implements WriteTrain.Batch {
+
+	//key the coalescer is stored under in the switch attributes
+	public static final String SWITCH_ATTRIBUTE = "fsfw.writeCoalescer";
+	public static final int DEFAULT_MAX_BATCH_BYTES = 32768;
+	public static final long DEFAULT_MAX_DELAY_MICROS = 1000;
+
+	private static final Logger log = LoggerFactory.getLogger(SwitchWriteCoalescer.class);
+
+	private final IOFSwitch sw;
+	private final SwitchBackpressure backpressure;
+	private final ConcurrentLinkedQueue<PendingWrite> pending;
+	private final AtomicInteger pendingBytes;
+	private final AtomicLong oldestPending;
+	private volatile int maxBatchBytes;
+	private volatile long maxDelayNanos;
+
+	//batch metrics, only updated while holding the flush lock
+	private long batches = 0;
+	private long messages = 0;
+	private long bytes = 0;
+	private int maxBatch = 0;
+
+	public SwitchWriteCoalescer(IOFSwitch sw){
+		this(sw, DEFAULT_MAX_BATCH_BYTES, DEFAULT_MAX_DELAY_MICROS);
+	}
+
+	public SwitchWriteCoalescer(IOFSwitch sw, int maxBatchBytes, long maxDelayMicros){
+		this.sw = sw;
+		this.backpressure = new SwitchBackpressure(sw);
+		this.pending = new ConcurrentLinkedQueue<PendingWrite>();
+		this.pendingBytes = new AtomicInteger(0);
+		this.oldestPending = new AtomicLong(0);
+		this.maxBatchBytes = maxBatchBytes;
+		this.maxDelayNanos = maxDelayMicros * 1000;
+	}
+
+	/**
+	 * returns the coalescer shared by every proxy of the switch,
+	 * creating it on first use.  It lives in the switch attributes
+	 * so it goes away with the switch.  Only creating it takes the
+	 * lock, this is called for every barrier reply and error
+	 * @param sw
+	 * @return SwitchWriteCoalescer
+	 */
+	public static SwitchWriteCoalescer getInstance(IOFSwitch sw){
+		Object existing = sw.getAttribute(SWITCH_ATTRIBUTE);
+		if(existing instanceof SwitchWriteCoalescer){
+			return (SwitchWriteCoalescer) existing;
+		}
+		synchronized(SwitchWriteCoalescer.class){
+			existing = sw.getAttribute(SWITCH_ATTRIBUTE);
+			if(existing instanceof SwitchWriteCoalescer){
+				return (SwitchWriteCoalescer) existing;
+			}
+			SwitchWriteCoalescer coalescer = new SwitchWriteCoalescer(sw);
+			sw.setAttribute(SWITCH_ATTRIBUTE, coalescer);
+			return coalescer;
+		}
+	}
+
+	public void write(OFMessage msg){
+		this.write(msg, null);
+	}
+
+	public void write(List<OFMessage> msgs){
+		this.write(msgs, null);
+	}
+
+	/**
+	 * writes a message to the switch
+	 * @param msg
+	 * @param cntx passed on to the switch with the message, may be null
+	 */
+	public void write(OFMessage msg, FloodlightContext cntx){
+		this.enqueue(msg, cntx);
+		this.afterWrite();
+	}
+
+	/**
+	 * writes messages to the switch
+	 * @param msgs
+	 * @param cntx passed on to the switch with the messages, may be null
+	 */
+	public void write(List<OFMessage> msgs, FloodlightContext cntx){
+		for(OFMessage msg : msgs){
+			this.enqueue(msg, cntx);
+		}
+		this.afterWrite();
+	}
+
+	private void enqueue(OFMessage msg, FloodlightContext cntx){
+		if(this.pendingBytes.getAndAdd(msg.getLengthU()) == 0){
+			this.oldestPending.compareAndSet(0, System.nanoTime());
+		}
+		this.pending.add(new PendingWrite(msg, cntx));
+	}
+
+	private void afterWrite(){
+		WriteTrain.written(this);
+		if(this.pending.isEmpty()){
+			return;
+		}
+		long oldest = this.oldestPending.get();
+		if(this.pendingBytes.get() >= this.maxBatchBytes
+				|| (oldest != 0 && System.nanoTime() - oldest >= this.maxDelayNanos)){
+			this.flush();
+		}
+	}
+
+	/**
+	 * writes everything queued to the switch as one list and flushes it
+	 */
+	public synchronized void flush(){
+		if(this.pending.isEmpty()){
+			return;
+		}
+		this.oldestPending.set(0);
+		List<OFMessage> batch = new ArrayList<OFMessage>();
+		List<FloodlightContext> contexts = new ArrayList<FloodlightContext>();
+		int batchBytes = 0;
+		PendingWrite write;
+		while((write = this.pending.poll()) != null){
+			batch.add(write.msg);
+			contexts.add(write.cntx);
+			batchBytes += write.msg.getLengthU();
+		}
+		this.pendingBytes.addAndGet(-batchBytes);
+		int batchSize = batch.size();
+		//a flow control barrier may be added, it has no context
+		this.backpressure.beforeWrite(batch, batchBytes);
+		int start = 0;
+		while(start < batch.size()){
+			FloodlightContext cntx = start < batchSize ? contexts.get(start) : null;
+			int end = start + 1;
+			while(end < batch.size() && (end < batchSize ? contexts.get(end) : null) == cntx){
+				end++;
+			}
+			try{
+				this.sw.write(batch.subList(start, end), cntx);
+			}catch(IOException e){
+				log.error("Unable to write " + (end - start) + " messages to switch " + this.sw.getStringId() + ": " + e.getMessage());
+			}
+			start = end;
+		}
+		this.sw.flush();
+
+		this.batches++;
+		this.messages += batchSize;
+		this.bytes += batchBytes;
+		if(batchSize > this.maxBatch){
+			this.maxBatch = batchSize;
+		}
+	}
+
+	public SwitchBackpressure getBackpressure(){
+		return this.backpressure;
+	}
+
+	public void setMaxBatchBytes(int maxBatchBytes){
+		this.maxBatchBytes = maxBatchBytes;
+	}
+
+	public int getMaxBatchBytes(){
+		return this.maxBatchBytes;
+	}
+
+	public void setMaxDelayMicros(long maxDelayMicros){
+		this.maxDelayNanos = maxDelayMicros * 1000;
+	}
+
+	public long getMaxDelayMicros(){
+		return this.maxDelayNanos / 1000;
+	}
+
+	public int getPendingBytes(){
+		return this.pendingBytes.get();
+	}
+
+	public synchronized long getBatchCount(){
+		return this.batches;
+	}
+
+	public synchronized long getMessageCount(){
+		return this.messages;
+	}
+
+	public synchronized long getByteCount(){
+		return this.bytes;
+	}
+
+	public synchronized int getMaxBatch(){
+		return this.maxBatch;
+	}
+
+	public synchronized double getMeanBatch(){
+		if(this.batches == 0){
+			return 0;
+		}
+		return (double)this.messages / this.batches;
+	}
+
+	/**
+	 * a queued message and the context it was written with
+	 */
+	private static final class PendingWrite {
+		private final OFMessage msg;
+		private final FloodlightContext cntx;
+
+		private PendingWrite(OFMessage msg, FloodlightContext cntx){
+			this.msg = msg;
+			this.cntx = cntx;
+		}
+	}
+}
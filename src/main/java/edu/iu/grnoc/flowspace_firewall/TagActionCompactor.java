@@ -0,0 +1,156 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openflow.protocol.action.OFAction;
+import org.openflow.protocol.action.OFActionVirtualLanIdentifier;
+
+/**
+ * Shrinks action lists that rewrite the vlan tag before outputs.
+ * Outputs are grouped by the tag they leave with so each tag is
+ * only set once, SET_VLAN 100, OUTPUT 1, SET_VLAN 200, OUTPUT 2,
+ * SET_VLAN 100, OUTPUT 3 becomes SET_VLAN 100, OUTPUT 1, OUTPUT 3,
+ * SET_VLAN 200, OUTPUT 2.  Every output still leaves with the same
+ * tag, no output moves across any other kind of action and the
+ * packet ends each run of outputs with the tag it had before.
+ * @author aragusa
+ *
+ */
+public final class TagActionCompactor {
+
+	//group for outputs sent with the tag the packet came in with
+	private static final int ORIGINAL = Integer.MIN_VALUE;
+	//group for outputs sent after a STRIP_VLAN
+	private static final int STRIPPED = -1;
+
+	private TagActionCompactor(){
+	}
+
+	/**
+	 * returns the compacted action list, never longer than the original
+	 * @param actions the actions to compact
+	 * @return List of actions
+	 */
+	public static List<OFAction> compact(List<OFAction> actions){
+		if(actions == null || actions.size() < 4){
+			//need at least 2 tag/output pairs to save anything
+			return actions;
+		}
+		List<OFAction> compacted = new ArrayList<OFAction>(actions.size());
+		Run run = new Run(ORIGINAL, null);
+		for(OFAction action : actions){
+			switch(action.getType()){
+			case SET_VLAN_ID:
+				run.setTag(((OFActionVirtualLanIdentifier)action).getVirtualLanIdentifier() & 0xffff, action);
+				break;
+			case STRIP_VLAN:
+				run.setTag(STRIPPED, action);
+				break;
+			case OUTPUT:
+				run.addOutput(action);
+				break;
+			default:
+				//anything else changes the packet so outputs can't move past it
+				run.flush(compacted);
+				compacted.add(action);
+				run = new Run(run.tag, run.tagActions.get(run.tag));
+				break;
+			}
+		}
+		run.flush(compacted);
+		return compacted;
+	}
+
+	/**
+	 * returns the length in bytes of a list of actions
+	 * @param actions
+	 * @return int length
+	 */
+	public static int getLength(List<OFAction> actions){
+		int length = 0;
+		for(OFAction act : actions){
+			length += act.getLengthU();
+		}
+		return length;
+	}
+
+	/**
+	 * the tag and output actions between two other actions
+	 */
+	private static final class Run {
+		private final int startTag;
+		private int tag;
+		//tag -> outputs sent with that tag, in order of first use
+		private final LinkedHashMap<Integer, List<OFAction>> outputs = new LinkedHashMap<Integer, List<OFAction>>();
+		//tag -> action that sets it
+		private final HashMap<Integer, OFAction> tagActions = new HashMap<Integer, OFAction>();
+
+		Run(int tag, OFAction tagAction){
+			this.startTag = tag;
+			this.tag = tag;
+			if(tagAction != null){
+				this.tagActions.put(tag, tagAction);
+			}
+		}
+
+		void setTag(int tag, OFAction tagAction){
+			this.tag = tag;
+			this.tagActions.put(tag, tagAction);
+		}
+
+		void addOutput(OFAction output){
+			List<OFAction> outs = this.outputs.get(this.tag);
+			if(outs == null){
+				outs = new ArrayList<OFAction>();
+				this.outputs.put(this.tag, outs);
+			}
+			outs.add(output);
+		}
+
+		void flush(List<OFAction> compacted){
+			boolean retagged = false;
+			//the packet already has the starting tag so those go first untouched
+			if(this.startTag != this.tag){
+				List<OFAction> outs = this.outputs.remove(this.startTag);
+				if(outs != null){
+					compacted.addAll(outs);
+				}
+			}
+			for(Map.Entry<Integer, List<OFAction>> entry : this.outputs.entrySet()){
+				if(entry.getKey() == this.tag){
+					continue;
+				}
+				compacted.add(this.tagActions.get(entry.getKey()));
+				compacted.addAll(entry.getValue());
+				retagged = true;
+			}
+			//the current tag goes last so anything after sees the same packet
+			if(retagged || this.startTag != this.tag){
+				compacted.add(this.tagActions.get(this.tag));
+			}
+			List<OFAction> outs = this.outputs.get(this.tag);
+			if(outs != null){
+				compacted.addAll(outs);
+			}
+		}
+	}
+}
@@ -16,54 +16,58 @@
 package edu.iu.grnoc.flowspace_firewall;
 
 import java.util.ArrayList;
-import java.util.Hashtable;
 import java.util.List;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
+/**
+ * Stores the set of VLAN tags allowed on a port.
+ * Tagged VLANs are kept in a fixed 4096 bit bitset (one bit per
+ * VLAN id, bit 0 unused) and untagged is kept as its own flag so
+ * that lookups are a single word test with no boxing or locking.
+ * @author aragusa
+ *
+ */
 public class VLANRange {
 
 	//min and max ranges
 	public static final short MAX_VLAN = 4095;
 	public static final short MIN_VLAN = 1;
 	public static final short UNTAGGED = -1;
-	
-	private static final Logger log = LoggerFactory.getLogger(VLANRange.class);
-	private List<Short> available = new ArrayList<Short>();
+
+	//number of 64 bit words needed to hold every vlan id
+	private static final int WORDS = (MAX_VLAN + 1) >>> 6;
+	//bit 0 is not a valid vlan so it is never part of the tagged set
+	private static final long FIRST_WORD_MASK = ~1L;
+
+	//one bit per vlan id
+	private final long[] vlans = new long[WORDS];
+	private boolean untagged = false;
+	//number of tagged vlans currently set
+	private int tagCount = 0;
+
 	//these prevent us from having to loop through
 	//and determine if the port allows a wildcard
 	private boolean wildcard = false;
-	
-	//hastable that lets us see if a vlan is allowed
-	private Hashtable <Short, Boolean> vlans = new Hashtable <Short, Boolean>();
-	
+
+	//cached result of getAvailableTags, cleared on every change
+	private volatile Short[] availableCache;
+
 	public VLANRange(){
 		//create the vlanRange and set everything to not allowed
-		for(short i=MIN_VLAN;i<=MAX_VLAN;i++){
-			vlans.put(i, false);
-		}
-		vlans.put(UNTAGGED, false);
 	}
-		
+
 	public VLANRange(short vlans[],boolean status){
 		//create a vlan range with an array of vlans and setting the status
 		//for each of them
-		for(short i=MIN_VLAN; i<=MAX_VLAN; i++){
-			this.vlans.put(i,!status);
-			if(!status){
-				this.available.add(i);
-			}
+		if(!status){
+			//everything is allowed except what we were handed
+			this.setRangeBits(MIN_VLAN, MAX_VLAN, true);
 		}
-		this.vlans.put(UNTAGGED, false);
-		
+
 		for(int i=0; i< vlans.length; i++){
 			this.setVlanAvail(vlans[i], status);
 		}
-		
-		this.wildcard = this.allowVlanWildcard();
 	}
-	
+
 	/**
 	 * sets a vlans status for this vlanRange.
 	 * @param vlanId the vlanId to set the status for
@@ -73,15 +77,64 @@ public class VLANRange {
 		if(!validVlan(vlanId)){
 			throw new IllegalArgumentException("VLAN ID " + vlanId + " is out of range for valid vlan tags");
 		}
-		vlans.put(vlanId, status);
-		if(status){
-			this.available.add(vlanId);
+		if(vlanId == UNTAGGED){
+			this.untagged = status;
 		}else{
-			if(this.available.contains(vlanId)){
-				this.available.remove(this.available.indexOf(vlanId));
+			int word = vlanId >>> 6;
+			long bit = 1L << vlanId;
+			boolean wasSet = (this.vlans[word] & bit) != 0;
+			if(status && !wasSet){
+				this.vlans[word] |= bit;
+				this.tagCount++;
+			}else if(!status && wasSet){
+				this.vlans[word] &= ~bit;
+				this.tagCount--;
 			}
 		}
-		this.wildcard = this.allowVlanWildcard();
+		this.changed();
+	}
+
+	/**
+	 * allows every vlan between start and end (inclusive)
+	 * a range of -1 to -1 allows untagged traffic
+	 * @param start the first vlan id of the range
+	 * @param end the last vlan id of the range
+	 */
+	public void addRange(short start, short end) throws IllegalArgumentException{
+		this.setRange(start, end, true);
+	}
+	
+	/**
+	 * disallows every vlan between start and end (inclusive)
+	 * a range of -1 to -1 disallows untagged traffic
+	 * @param start the first vlan id of the range
+	 * @param end the last vlan id of the range
+	 */
+	public void removeRange(short start, short end) throws IllegalArgumentException{
+		this.setRange(start, end, false);
+	}
+	
+	private void setRange(short start, short end, boolean status) throws IllegalArgumentException{
+		if(!validVlan(start)){
+			throw new IllegalArgumentException("VLAN ID " + start + " is out of range for valid vlan tags");
+		}
+		if(!validVlan(end)){
+			throw new IllegalArgumentException("VLAN ID " + end + " is out of range for valid vlan tags");
+		}
+		if(end < start){
+			//empty range nothing to do
+			return;
+		}
+		if(start == UNTAGGED){
+			if(end != UNTAGGED){
+				//untagged can only be specified on its own
+				throw new IllegalArgumentException("VLAN range " + start + " to " + end + " mixes untagged and tagged vlans");
+			}
+			this.untagged = status;
+			this.changed();
+			return;
+		}
+		this.setRangeBits(start, end, status);
 	}
 	
 	/**
@@ -91,13 +144,6 @@ public class VLANRange {
 	public boolean allowWildcard(){
 		return wildcard;
 	}
-	
-	/**
-	 * determins if a given vlan id is available
-	 * @param vlanId
-	 * @return boolean
-	 */
-	
 
 	private boolean validVlan(short vlanId){
 		if(vlanId != UNTAGGED && (vlanId > MAX_VLAN || vlanId < MIN_VLAN)){
@@ -105,44 +151,152 @@ public class VLANRange {
 		}
 		return true;
 	}
-	
+
+	/**
+	 * returns all of the available tags in ascending order
+	 * with untagged (if allowed) last.  The array is cached until
+	 * the range changes so callers must not modify it
+	 * @return Short[] of available tags
+	 */
 	public Short[] getAvailableTags(){
-		Short[] avail = new Short[this.available.size()];
-		this.available.toArray(avail);
+		Short[] avail = this.availableCache;
+		if(avail != null){
+			return avail;
+		}
+		avail = new Short[this.tagCount + (this.untagged ? 1 : 0)];
+		int idx = 0;
+		for(int word = 0; word < WORDS; word++){
+			long bits = this.vlans[word];
+			while(bits != 0){
+				int bit = Long.numberOfTrailingZeros(bits);
+				avail[idx++] = (short)((word << 6) + bit);
+				bits &= bits - 1;
+			}
+		}
+		if(this.untagged){
+			avail[idx] = UNTAGGED;
+		}
+		this.availableCache = avail;
 		return avail;
 	}
-	
+
+	/**
+	 * determines if a given vlan id is available
+	 * @param vlanId
+	 * @return boolean
+	 */
 	public boolean getVlanAvail(short vlanId) throws IllegalArgumentException{
-		if(!validVlan(vlanId)){
+		if(vlanId == UNTAGGED){
+			return this.untagged;
+		}
+		if(vlanId > MAX_VLAN || vlanId < MIN_VLAN){
 			throw new IllegalArgumentException("VLAN ID " + vlanId + " is out of range for valid vlan tags");
 		}
-
-		log.debug("Looking for available for vlan: " + vlanId);
-		return vlans.get(new Short(vlanId));
+		return (this.vlans[vlanId >>> 6] & (1L << vlanId)) != 0;
 	}
-	
+
 	/**
 	 * returns if the wildcard is allowed or not
 	 * we currently aren't using this as wildcard vlan = bad
 	 * @return
 	 */
 	private boolean allowVlanWildcard(){
-		for(short i=MIN_VLAN; i<=MAX_VLAN; i++){
-			if(!vlans.get(i)){
-				return false;
+		return this.tagCount == MAX_VLAN;
+	}
+
+	public boolean rangeOverlap(VLANRange otherRange){
+		for(int word = 0; word < WORDS; word++){
+			if((this.vlans[word] & otherRange.vlans[word]) != 0){
+				return true;
 			}
 		}
-		return true;
+		return false;
+	}
+
+	/**
+	 * returns the tagged vlans allowed by this range as a sorted list
+	 * of non-overlapping {start, end} intervals (inclusive)
+	 * untagged is not included
+	 * @return List of short[2] intervals
+	 */
+	public List<short[]> getRanges(){
+		List<short[]> ranges = new ArrayList<short[]>();
+		int start = this.nextSetBit(MIN_VLAN);
+		while(start != -1){
+			int end = this.nextClearBit(start) - 1;
+			ranges.add(new short[]{(short)start, (short)end});
+			start = this.nextSetBit(end + 1);
+		}
+		return ranges;
 	}
 	
-	public boolean rangeOverlap(VLANRange otherRange){
-		for(short i=MIN_VLAN; i<MAX_VLAN; i++){
-			if(vlans.get(i)){
-				if(otherRange.vlans.get(i)){
-					return true;
-				}
+	//first allowed tagged vlan at or after from, -1 if there is none
+	private int nextSetBit(int from){
+		if(from > MAX_VLAN){
+			return -1;
+		}
+		int word = from >>> 6;
+		long bits = this.vlans[word] & (-1L << from);
+		while(true){
+			if(bits != 0){
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			}
+			if(++word == WORDS){
+				return -1;
 			}
+			bits = this.vlans[word];
 		}
-		return false;
-	}	
+	}
+	
+	//first disallowed tagged vlan at or after from, MAX_VLAN + 1 if there is none
+	private int nextClearBit(int from){
+		if(from > MAX_VLAN){
+			return MAX_VLAN + 1;
+		}
+		int word = from >>> 6;
+		long bits = ~this.vlans[word] & (-1L << from);
+		while(true){
+			if(bits != 0){
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			}
+			if(++word == WORDS){
+				return MAX_VLAN + 1;
+			}
+			bits = ~this.vlans[word];
+		}
+	}
+	
+	/**
+	 * sets or clears every tagged vlan between start and end (inclusive)
+	 * a word at a time
+	 */
+	private void setRangeBits(int start, int end, boolean status){
+		int startWord = start >>> 6;
+		int endWord = end >>> 6;
+		for(int word = startWord; word <= endWord; word++){
+			long mask = -1L;
+			if(word == startWord){
+				mask &= -1L << start;
+			}
+			if(word == endWord){
+				mask &= -1L >>> (63 - (end & 63));
+			}
+			if(word == 0){
+				mask &= FIRST_WORD_MASK;
+			}
+			long before = this.vlans[word];
+			if(status){
+				this.vlans[word] = before | mask;
+			}else{
+				this.vlans[word] = before & ~mask;
+			}
+			this.tagCount += Long.bitCount(this.vlans[word]) - Long.bitCount(before);
+		}
+		this.changed();
+	}
+
+	private void changed(){
+		this.wildcard = this.allowVlanWildcard();
+		this.availableCache = null;
+	}
 }
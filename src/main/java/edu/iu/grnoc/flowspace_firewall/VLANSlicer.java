@@ -17,6 +17,7 @@ package edu.iu.grnoc.flowspace_firewall;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -27,13 +28,13 @@ import java.util.Map.Entry;
 
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.ImmutablePort;
-import net.floodlightcontroller.packet.Ethernet;
 
 import org.openflow.protocol.OFFlowMod;
 import org.openflow.protocol.OFMatch;
 import org.openflow.protocol.OFMessage;
 import org.openflow.protocol.OFPacketOut;
 import org.openflow.protocol.OFPort;
+import org.openflow.protocol.OFType;
 import org.openflow.protocol.Wildcards;
 import org.openflow.protocol.Wildcards.Flag;
 import org.openflow.protocol.action.OFAction;
@@ -55,9 +56,16 @@ import org.slf4j.LoggerFactory;
 public class VLANSlicer implements Slicer{
 
 	private HashMap<String, PortConfig> portList;
+	//openflow port number -> PortConfig for the ports on the connected switch
+	//portIds is the working copy, portIndex is what the lookups read
+	private HashMap<Short, PortConfig> portIds = new HashMap<Short, PortConfig>();
+	private volatile PortConfigIndex portIndex = new PortConfigIndex();
+	//allow/deny decisions for flow mods already sliced
+	private FlowVerdictCache flowVerdicts = new FlowVerdictCache();
 	private InetSocketAddress controllerAddress;
 	private IOFSwitch sw;
-	private RateTracker myRateTracker;
+	//flow mods and other messages from the controller, a bucket per message class
+	private MessageBudget myBudget;
 	private int maxFlows;
 	private String name;
 	private int packetInRate;
@@ -67,12 +75,24 @@ public class VLANSlicer implements Slicer{
 	private boolean flushOnConnect;
 	private boolean tagMgmt;
 	private boolean doTimeouts;
+	//limits on what may wait to be sent to the controller
+	private int maxQueuedBytes = ChannelWriteBatch.DEFAULT_MAX_QUEUED_BYTES;
+	private int maxQueuedMessages = ChannelWriteBatch.DEFAULT_MAX_QUEUED_MESSAGES;
+	private int packetInBurst = DEFAULT_PACKET_IN_BURST;
+	//how an overload of packet ins is handled
+	private int packetInSampleRate = PacketInGovernor.DEFAULT_SAMPLE_RATE;
+	private long packetInDisableAfter = PacketInGovernor.DEFAULT_DISABLE_AFTER_MILLIS;
+	
+	//bursts of 0 allow one second worth of the rate
+	public static final int DEFAULT_FLOW_BURST = 0;
+	public static final int DEFAULT_FLOW_RATE = 100;
+	public static final int DEFAULT_PACKET_IN_BURST = 0;
 	
 	private static final Logger log = LoggerFactory.getLogger(VLANSlicer.class);
 	
 	public VLANSlicer(HashMap <String, PortConfig> ports, 
 			InetSocketAddress controllerAddress, int rate, String name, boolean flushOnConnect, boolean tagMgmt, boolean doTimeouts){
-		myRateTracker = new RateTracker(10,100);
+		myBudget = new MessageBudget(DEFAULT_FLOW_BURST, DEFAULT_FLOW_RATE);
 		portList = ports;
 		this.name = name;
 		this.adminState = true;
@@ -102,7 +122,7 @@ public class VLANSlicer implements Slicer{
 	}
 	
 	public VLANSlicer(){
-		myRateTracker = new RateTracker(10,100);
+		myBudget = new MessageBudget(DEFAULT_FLOW_BURST, DEFAULT_FLOW_RATE);
 		packetInRate = 10;
 		portList = new HashMap<String,PortConfig>();
 		name = "";
@@ -151,18 +171,81 @@ public class VLANSlicer implements Slicer{
 		this.packetInRate = rate;
 	}
 	
+	public int getMaxQueuedBytes(){
+		return this.maxQueuedBytes;
+	}
+	
+	public void setMaxQueuedBytes(int bytes){
+		this.maxQueuedBytes = bytes;
+	}
+	
+	public int getMaxQueuedMessages(){
+		return this.maxQueuedMessages;
+	}
+	
+	public void setMaxQueuedMessages(int messages){
+		this.maxQueuedMessages = messages;
+	}
+	
 	
 	public void setPortId(String portName, short portId){
 		
 		PortConfig ptCnfg = this.getPortConfig(portName);
 		if(ptCnfg != null){
 			ptCnfg.setPortId(portId);
+			synchronized(this.portIds){
+				this.portIds.values().remove(ptCnfg);
+				this.portIds.put(portId, ptCnfg);
+				this.portIndex = new PortConfigIndex(this.portIds);
+			}
+			this.flowVerdicts.clear();
 			log.debug("Set port: " + portName + " to port id: " + portId);
 		}else{
 			log.debug("NO configuration for port named: " + portName);
 		}
 	}
 	
+	/**
+	 * removes the port from the port id lookup table
+	 * used when the port is deleted from the switch
+	 * @param portName
+	 */
+	
+	public void removePortId(String portName){
+		PortConfig ptCnfg = this.getPortConfig(portName);
+		if(ptCnfg == null){
+			return;
+		}
+		synchronized(this.portIds){
+			if(this.portIds.values().remove(ptCnfg)){
+				this.portIndex = new PortConfigIndex(this.portIds);
+				log.debug("Removed port: " + portName + " from the port id table");
+			}
+		}
+		this.flowVerdicts.clear();
+	}
+	
+	/**
+	 * rebuilds the port id lookup table from the ports
+	 * the switch currently has
+	 */
+	
+	private void rebuildPortIndex(){
+		synchronized(this.portIds){
+			this.portIds.clear();
+			if(this.sw != null){
+				for(ImmutablePort port : this.sw.getPorts()){
+					PortConfig ptCfg = portList.get(port.getName());
+					if(ptCfg != null){
+						this.portIds.put(port.getPortNumber(), ptCfg);
+					}
+				}
+			}
+			this.portIndex = new PortConfigIndex(this.portIds);
+		}
+		this.flowVerdicts.clear();
+	}
+	
 	/**
 	 * sets the switch object as our slicer
 	 * probably existed before the switch connected
@@ -182,6 +265,7 @@ public class VLANSlicer implements Slicer{
 				log.debug("No configuration for port named: " + port.getName());
 			}
 		}
+		this.rebuildPortIndex();
 	}
 	
 	public void setAdminState(boolean state){
@@ -196,6 +280,7 @@ public class VLANSlicer implements Slicer{
 	
 	public void setPortConfig(String portName, PortConfig portConfig){
 		portList.put(portName, portConfig);
+		this.flowVerdicts.clear();
 		if(this.sw != null){
 			Iterator <ImmutablePort> portIterator = sw.getPorts().iterator();
 			while(portIterator.hasNext()){
@@ -207,6 +292,7 @@ public class VLANSlicer implements Slicer{
 					log.debug("Set port " + portConfig.getPortName() + " to port id " + port.getPortNumber());
 				}
 			}
+			this.rebuildPortIndex();
 		}
 	}
 	
@@ -224,11 +310,61 @@ public class VLANSlicer implements Slicer{
 	}
 	
 	/**
-	 * sets the flowRate for the switch/slice instance
+	 * sets the flowRate for the switch/slice instance, every
+	 * message class without its own rate follows it
 	 * @param flowRate
 	 */
 	public void setFlowRate(int flowRate){
-		this.myRateTracker.setRate(flowRate);
+		this.myBudget.setDefaultRate(flowRate);
+	}
+	
+	public void setFlowBurst(int flowBurst){
+		this.myBudget.setDefaultBurst(flowBurst);
+	}
+	
+	public int getFlowBurst(){
+		return this.myBudget.getDefaultBurst();
+	}
+	
+	public void setMessageRate(MessageBudget.MessageClass cls, int rate){
+		this.myBudget.setRate(cls, rate);
+	}
+	
+	public void setMessageBurst(MessageBudget.MessageClass cls, int burst){
+		this.myBudget.setBurst(cls, burst);
+	}
+	
+	public MessageBudget getMessageBudget(){
+		return this.myBudget;
+	}
+	
+	public void setPacketInBurst(int packetInBurst){
+		this.packetInBurst = packetInBurst;
+	}
+	
+	public int getPacketInBurst(){
+		return this.packetInBurst;
+	}
+	
+	public void setPacketInSampleRate(int sampleRate){
+		this.packetInSampleRate = sampleRate;
+	}
+	
+	public int getPacketInSampleRate(){
+		return this.packetInSampleRate;
+	}
+	
+	/**
+	 * sets how long the packet in rate must be exceeded without a break
+	 * before the slice is disabled
+	 * @param millis
+	 */
+	public void setPacketInDisableAfter(long millis){
+		this.packetInDisableAfter = millis;
+	}
+	
+	public long getPacketInDisableAfter(){
+		return this.packetInDisableAfter;
 	}
 	
 	/**
@@ -253,6 +389,8 @@ public class VLANSlicer implements Slicer{
 	 * openflow identifier for the port
 	 * If the switch is null (not connected) or the port is 
 	 * not found, the return result will be null
+	 * The lookup goes through the port id table built when the
+	 * switch connects so it never touches the switch itself
 	 * @param portId the openflow port id
 	 **/
 	
@@ -261,18 +399,7 @@ public class VLANSlicer implements Slicer{
 		if(this.sw == null){
 			throw new IllegalStateException("Switch not connected so we don't know the port id");
 		}
-		ImmutablePort thisPort = this.sw.getPort(portId);
-		
-		if(thisPort == null){
-			log.warn("Port: " + portId + " was not found on this switch... sorry");
-			return null;
-		}
-		log.debug("Looking for PORT: " + thisPort.getName());
-		if(portList.containsKey(thisPort.getName())){
-			return portList.get(thisPort.getName());
-		}else{
-			return null;
-		}
+		return this.portIndex.get(portId);
 	}
 	
 	/**
@@ -286,6 +413,14 @@ public class VLANSlicer implements Slicer{
 		return portList.get(portName);
 	}
 	
+	/**
+	 * returns every <PortConfig> configured for this slice
+	 **/
+	
+	public Collection<PortConfig> getPortConfigs(){
+		return portList.values();
+	}
+	
 	/**
 	 * expands the actions in a flowMod so that if we have an ALL
 	 * action it will be output to all ports but the port it came frome
@@ -357,7 +492,10 @@ public class VLANSlicer implements Slicer{
 			e.printStackTrace();
 			return null;
 		}
+		//one tag rewrite per egress tag instead of one per output
+		newActions = TagActionCompactor.compact(newActions);
 		newFlow.setActions(newActions);
+		newFlow.setLengthU(flowMod.getLengthU() - TagActionCompactor.getLength(actions) + TagActionCompactor.getLength(newActions));
 		return newFlow;
 		
 	}
@@ -375,16 +513,37 @@ public class VLANSlicer implements Slicer{
 	}
 	
 	public int getMaxFlowRate(){
-		return this.myRateTracker.getMaxRate();
+		return this.myBudget.getDefaultRate();
 	}
 	
 	
+	/**
+	 * builds a packet out for one egress port of a managed packet out.
+	 * The packet data is not copied, packet outs going out with the
+	 * same vlan tag share one tagged frame
+	 */
+	private OFPacketOut buildManagedPacketOut(OFPacketOut packet, byte[] packetData, List<OFAction> actions){
+		OFPacketOut newOut = new OFPacketOut();
+		newOut.setBufferId(packet.getBufferId());
+		newOut.setInPort(packet.getInPort());
+		newOut.setType(packet.getType());
+		newOut.setXid(packet.getXid());
+		newOut.setPacketData(packetData);
+		newOut.setActions(actions);
+		int size = 0;
+		for(OFAction act : actions){
+			size = size + act.getLengthU();
+		}
+		newOut.setActionsLength((short)size);
+		newOut.setLength((short)(OFPacketOut.MINIMUM_LENGTH + packetData.length + size));
+		return newOut;
+	}
+	
 	public List<OFMessage> managedPacketOut(OFPacketOut outPacket){
 		List <OFAction> newActions = new ArrayList<OFAction>();
 		List <OFAction> actions = outPacket.getActions();
 		List <OFMessage> packets = new ArrayList<OFMessage>();
 		Iterator <OFAction> it = actions.iterator();
-		OFMatch match = new OFMatch();
 		if(outPacket.getPacketData().length == 0 && outPacket.getBufferId() != 0){
 			//look at the buffer id and see if it matches one we have in our 
 			//buffer cache
@@ -397,16 +556,14 @@ public class VLANSlicer implements Slicer{
 				return packets;
 			}
 		}
-		try{
-			match.loadFromPacket(outPacket.getPacketData(),(short)0);
-		}
-		catch(Exception e){
-			log.error("Loading Match from packet failed: " + e.getMessage());
-			packets.clear();
+		//the vlan tag is the only thing we need out of the packet
+		int vlanId = PacketHeader.getVlanId(outPacket.getPacketData());
+		if(vlanId == PacketHeader.MALFORMED){
+			log.error("Loading VLAN from packet failed: packet is too short");
 			return packets;
 		}
-		log.debug("VLAN ID: " + match.getDataLayerVirtualLan());
-		if(match.getDataLayerVirtualLan() != -1){
+		log.debug("VLAN ID: " + vlanId);
+		if(vlanId != VLANRange.UNTAGGED){
 			//log.error("Packet has VID Set");
 			packets.clear();
 			return packets;
@@ -424,7 +581,8 @@ public class VLANSlicer implements Slicer{
 					OFActionOutput output = (OFActionOutput)action;
 					if(output.getPort() == OFPort.OFPP_ALL.getValue()){
 						log.info("output to ALL expanding");
-						
+						//one tagged copy of the packet per vlan, not per port
+						HashMap<Short, byte[]> templates = new HashMap<Short, byte[]>();
 						for(Map.Entry<String, PortConfig> port : this.portList.entrySet()){
 							PortConfig myPortCfg = this.getPortConfig(port.getValue().getPortId());
 							if(myPortCfg == null){
@@ -434,29 +592,20 @@ public class VLANSlicer implements Slicer{
 							}
 							List<OFAction> actualActions = new ArrayList<OFAction>();
 							actualActions.addAll(newActions);
-							OFPacketOut newOut = this.clonePacketOut(outPacket);
 							OFActionOutput newOutput = new OFActionOutput();
 							newOutput.setMaxLength(Short.MAX_VALUE);
 							newOutput.setType(OFActionType.OUTPUT);
 							newOutput.setLength((short)OFActionOutput.MINIMUM_LENGTH);
 							newOutput.setPort(port.getValue().getPortId());
-
-							Ethernet pkt =  (Ethernet) new Ethernet().deserialize(outPacket.getPacketData(), 
-																				  0, outPacket.getPacketData().length);
-							
-							pkt.setVlanID(myPortCfg.getVlanRange().getAvailableTags()[0]);
-							newOut.setPacketData(pkt.serialize());
-							
 							actualActions.add(newOutput);
-							newOut.setActions(actualActions);
-							int size = 0;
-							for(OFAction act : actualActions){
-								log.error("Packet Out Action: " + act.getType());
-								size = size + act.getLengthU();
+
+							Short tag = myPortCfg.getVlanRange().getAvailableTags()[0];
+							byte[] template = templates.get(tag);
+							if(template == null){
+								template = PacketHeader.pushVlan(outPacket.getPacketData(), tag);
+								templates.put(tag, template);
 							}
-							newOut.setActionsLength((short)size);
-							newOut.setLength((short)(OFPacketOut.MINIMUM_LENGTH + newOut.getPacketData().length + size));
-							packets.add(newOut);
+							packets.add(this.buildManagedPacketOut(outPacket, template, actualActions));
 						}
 						
 					}else if(output.getPort() == OFPort.OFPP_FLOOD.getValue()){
@@ -475,26 +624,11 @@ public class VLANSlicer implements Slicer{
 						log.debug("Simple case, single output and it was allowed");
 						List<OFAction> actualActions = new ArrayList<OFAction>();
 						actualActions.addAll(newActions);
-						OFPacketOut newOut = this.clonePacketOut(outPacket);
-						
-						
-						Ethernet pkt = (Ethernet) new Ethernet();
-						pkt.deserialize(outPacket.getPacketData(), 
-								  0, outPacket.getPacketData().length);
-						
-						log.debug("Setting the packet vlan ID to " + myPortCfg.getVlanRange().getAvailableTags()[0]);
-						log.debug("Packet: " + pkt.getEtherType());
-						pkt.setVlanID(myPortCfg.getVlanRange().getAvailableTags()[0]);
-						newOut.setPacketData(pkt.serialize());
 						actualActions.add(output);
-						newOut.setActions(actualActions);
-						int size = 0;
-						for(OFAction act : actualActions){
-							size = size + act.getLengthU();
-						}
-						newOut.setActionsLength((short)size);
-						newOut.setLength((short)(OFPacketOut.MINIMUM_LENGTH + newOut.getPacketData().length + size));
-						packets.add(newOut);
+						
+						short tag = myPortCfg.getVlanRange().getAvailableTags()[0];
+						log.debug("Setting the packet vlan ID to " + tag);
+						packets.add(this.buildManagedPacketOut(outPacket, PacketHeader.pushVlan(outPacket.getPacketData(), tag), actualActions));
 					}
 					break;
 				case STRIP_VLAN:
@@ -717,7 +851,6 @@ public class VLANSlicer implements Slicer{
 		List<OFFlowMod> newFlows = new ArrayList<OFFlowMod>();
 		List<OFAction> actions = flowMod.getActions();
 		List<OFAction> newActions = new ArrayList<OFAction>();
-		short additional_length = 0;
 		for(OFAction act : actions){
 			switch(act.getType()){
 				case OUTPUT:
@@ -743,23 +876,18 @@ public class VLANSlicer implements Slicer{
 									//do a strip vlan tag
 									OFActionStripVirtualLan strip_vlan_vid = new OFActionStripVirtualLan();
 									newActions.add(strip_vlan_vid);
-									additional_length += strip_vlan_vid.getLength();
 								}else{
 									//set the vlan id
 									OFActionVirtualLanIdentifier set_vlan_vid = new OFActionVirtualLanIdentifier();
 									set_vlan_vid.setVirtualLanIdentifier(vlanTag);
 									newActions.add(set_vlan_vid);
-									additional_length += set_vlan_vid.getLength();
 								}
 								OFActionOutput newOut = new OFActionOutput();
-								out.setPort(port.getValue().getPortId());
+								newOut.setMaxLength(out.getMaxLength());
+								newOut.setPort(port.getValue().getPortId());
 								newActions.add(newOut);
-								additional_length += newOut.getLength();
 							}
 						}
-						//we never added our orig action so remove its length from what we
-						//are sending it
-						additional_length -= out.getLengthU();
 						break;
 					}
 					
@@ -774,13 +902,11 @@ public class VLANSlicer implements Slicer{
 						//do a strip vlan tag
 						OFActionStripVirtualLan strip_vlan_vid = new OFActionStripVirtualLan();
 						newActions.add(strip_vlan_vid);
-						additional_length += strip_vlan_vid.getLength();
 					}else{
 						//set the vlan id
 						OFActionVirtualLanIdentifier set_vlan_vid = new OFActionVirtualLanIdentifier();
 						set_vlan_vid.setVirtualLanIdentifier(vlanTag);
 						newActions.add(set_vlan_vid);
-						additional_length += set_vlan_vid.getLength();
 					}
 					newActions.add(out);
 					break;
@@ -800,8 +926,10 @@ public class VLANSlicer implements Slicer{
 			}
 		}
 
+		//one tag rewrite per egress tag instead of one per output
+		newActions = TagActionCompactor.compact(newActions);
 		flowMod.setActions(newActions);
-		flowMod.setLength((short)(flowMod.getLength() + additional_length));
+		flowMod.setLengthU(flowMod.getLengthU() - TagActionCompactor.getLength(actions) + TagActionCompactor.getLength(newActions));
 		newFlows.add(flowMod);		
 		return newFlows;
 	}
@@ -814,6 +942,39 @@ public class VLANSlicer implements Slicer{
 	 */
 	
 	public List <OFFlowMod> allowedFlows(OFFlowMod flowMod){
+		FlowVerdictCache.Key key = FlowVerdictCache.keyFor(flowMod);
+		if(key == null){
+			return new ArrayList<OFFlowMod>();
+		}
+		Boolean verdict = this.flowVerdicts.get(key);
+		if(verdict != null && !verdict){
+			if(log.isDebugEnabled()){
+				log.debug("Slice: " + this.getSliceName() + ":" + this.getSwitchName() + " cached deny for flow: " + flowMod.toString());
+			}
+			return new ArrayList<OFFlowMod>();
+		}
+		List <OFFlowMod> flowMods;
+		try{
+			flowMods = this.sliceFlows(flowMod, verdict != null);
+		}catch(RuntimeException e){
+			//denied but not cached, the next flow like it is checked again
+			log.error("Slice: " + this.getSliceName() + ":" + this.getSwitchName() + " error slicing flow, denied: " + flowMod.toString(), e);
+			return new ArrayList<OFFlowMod>();
+		}
+		if(verdict == null){
+			this.flowVerdicts.put(key, !flowMods.isEmpty());
+		}
+		return flowMods;
+	}
+	
+	/**
+	 * does the work of allowedFlows
+	 * @param flowMod OFFlowMod to be sliced
+	 * @param knownAllowed true if a cached verdict already allowed
+	 * this flow so the per flow policy checks can be skipped
+	 */
+	
+	private List <OFFlowMod> sliceFlows(OFFlowMod flowMod, boolean knownAllowed){
 		log.debug("Attempting to slice: " + flowMod.toString());
 		List <OFFlowMod> flowMods = new ArrayList<OFFlowMod>();
 		OFMatch match = flowMod.getMatch();
@@ -866,7 +1027,7 @@ public class VLANSlicer implements Slicer{
 							return flowMods;
 						}
 						
-						if(this.isFlowAllowed(expandedFlow)){
+						if(knownAllowed || this.isFlowAllowed(expandedFlow)){
 							flowMods.add(expandedFlow);
 						}else{
 							log.debug("denied Flow " + expandedFlow.toString());
@@ -875,8 +1036,6 @@ public class VLANSlicer implements Slicer{
 						}
 					}catch (CloneNotSupportedException e){
 						log.error("This can't happen in the real world");
-					}catch (Exception e){
-						
 					}
 				}
 			}
@@ -904,7 +1063,7 @@ public class VLANSlicer implements Slicer{
 				return flowMods;
 			}
 			
-			if(this.isFlowAllowed(expandedFlow)){
+			if(knownAllowed || this.isFlowAllowed(expandedFlow)){
 				flowMods.add(expandedFlow);
 			}else{
 				log.debug("Denied flow " + expandedFlow.toString());
@@ -916,6 +1075,26 @@ public class VLANSlicer implements Slicer{
 		return flowMods;
 	}
 	
+	/**
+	 * fast check for a packet in, only the input port and the
+	 * vlan tag of the packet matter for slicing.  Gives the same
+	 * answer as allowedFlows on the packet's match without building
+	 * any flow mods
+	 * @param inPort the openflow port the packet came in on
+	 * @param vlanId the vlan id of the packet or -1 for untagged
+	 */
+	
+	public boolean isPacketInAllowed(short inPort, short vlanId){
+		if(vlanId == 0 || inPort == 0 || this.sw == null){
+			return false;
+		}
+		PortConfig portCfg = this.portIndex.get(inPort);
+		if(portCfg == null){
+			return false;
+		}
+		return portCfg.vlanAllowed(vlanId);
+	}
+	
 	/**
 	 * Process a flowMod and determines if it is properly in the slice
 	 * If it does match then the flow is returned.  If it does not
@@ -1054,12 +1233,7 @@ public class VLANSlicer implements Slicer{
 			throw new IllegalStateException("Switch not connected so we don't know the port id");
 		}
 		
-		ImmutablePort thisPort = this.sw.getPort(portId);
-		if(thisPort == null){
-			return false;
-		}
-		
-		return portList.containsKey(thisPort.getName());
+		return this.portIndex.get(portId) != null;
 	}
 	
 	/**
@@ -1084,16 +1258,12 @@ public class VLANSlicer implements Slicer{
 
 
 	@Override
-	public boolean isOkToProcessMessage() {
-		if(myRateTracker.okToProcess()){
-			return true;
-		}else{
-			return false;
-		}
+	public boolean isOkToProcessMessage(OFType type) {
+		return myBudget.okToProcess(type);
 	}
 	
 	public double getRate(){
-		return myRateTracker.getRate();		
+		return myBudget.getRate();		
 	}
 	
 	@Override
@@ -1121,6 +1291,14 @@ public class VLANSlicer implements Slicer{
 	public IOFSwitch getSwitch(){
 		return this.sw;
 	}
+	
+	public long getFlowCacheHits(){
+		return this.flowVerdicts.getHits();
+	}
+	
+	public long getFlowCacheMisses(){
+		return this.flowVerdicts.getMisses();
+	}
 
 	@Override
 	public int getPacketInRate() {
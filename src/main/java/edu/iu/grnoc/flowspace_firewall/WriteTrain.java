@@ -0,0 +1,103 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A train is the work done for one batch of messages read from a
+ * channel or one event from a switch.  Writes made on a thread while
+ * it is inside a train are held by their Batch and flushed once when
+ * the outermost train ends, so one train is one write per channel
+ * instead of one per message.
+ * @author aragusa
+ *
+ */
+public final class WriteTrain {
+
+	/**
+	 * something holding writes until the train ends
+	 */
+	public interface Batch {
+		void flush();
+	}
+
+	//nesting depth and batches written to by the current thread's train
+	private static final ThreadLocal<int[]> depth = new ThreadLocal<int[]>(){
+		@Override
+		protected int[] initialValue(){
+			return new int[1];
+		}
+	};
+	private static final ThreadLocal<List<Batch>> written = new ThreadLocal<List<Batch>>(){
+		@Override
+		protected List<Batch> initialValue(){
+			return new ArrayList<Batch>();
+		}
+	};
+
+	private WriteTrain(){
+	}
+
+	/**
+	 * starts a train on the calling thread, trains may nest
+	 */
+	public static void begin(){
+		depth.get()[0]++;
+	}
+
+	/**
+	 * ends a train on the calling thread, the outermost end flushes
+	 * every batch written to during the train in the order they
+	 * were first written to
+	 */
+	public static void end(){
+		int[] trainDepth = depth.get();
+		if(trainDepth[0] == 0 || --trainDepth[0] > 0){
+			return;
+		}
+		List<Batch> batches = written.get();
+		try{
+			for(int i = 0; i < batches.size(); i++){
+				batches.get(i).flush();
+			}
+		}finally{
+			batches.clear();
+		}
+	}
+
+	public static boolean inTrain(){
+		return depth.get()[0] > 0;
+	}
+
+	/**
+	 * called by a batch after queueing a write.  Outside of a train the
+	 * batch is flushed right away, inside one it is flushed when the
+	 * train ends
+	 * @param batch
+	 */
+	public static void written(Batch batch){
+		if(!inTrain()){
+			batch.flush();
+			return;
+		}
+		List<Batch> batches = written.get();
+		if(!batches.contains(batch)){
+			batches.add(batch);
+		}
+	}
+}
@@ -15,73 +15,276 @@
 */
 package edu.iu.grnoc.flowspace_firewall;
 
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Set;
-import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Maps the xids we send to the switch back to the xids the
+ * controller used.  Fixed size open addressed int to int table,
+ * every put is stamped with an increasing sequence number so
+ * only the newest max_xid_size - 1 puts are kept and removeToKey
+ * just moves a watermark.  No locks and no allocation, slots are
+ * claimed with a CAS on their stamp and readers retry if the stamp
+ * changes under them.  A put probes until it finds a dead slot so
+ * a live mapping is never evicted.  Each mapping also carries the type of
+ * the message and when it was sent so replies can be timed.
+ * @author aragusa
+ *
+ */
 public class XidMap {
 
-	private Map<Integer, Integer> xidMap;
 	private static final int max_xid_size = 1000;
+	//table is twice the live entries so probe windows stay mostly empty
+	private static final int TABLE_BITS = 11;
+	private static final int TABLE_SIZE = 1 << TABLE_BITS;
+	private static final int MASK = TABLE_SIZE - 1;
+	//probe distance expected with well spread keys, longer is logged
+	private static final int PROBES = 8;
+	
+	//stamp of 0 is an empty slot, a negative stamp is being written
+	private final AtomicLongArray stamps = new AtomicLongArray(TABLE_SIZE);
+	private final AtomicIntegerArray keys = new AtomicIntegerArray(TABLE_SIZE);
+	private final AtomicIntegerArray values = new AtomicIntegerArray(TABLE_SIZE);
+	private final AtomicIntegerArray types = new AtomicIntegerArray(TABLE_SIZE);
+	private final AtomicLongArray sentTimes = new AtomicLongArray(TABLE_SIZE);
+	//fields read by read()
+	private static final int VALUE = 0;
+	private static final int TYPE = 1;
+	private static final int SENT_TIME = 2;
+	//sequence number of the last put
+	private final AtomicLong sequence = new AtomicLong();
+	//everything stamped at or below this was removed by removeToKey
+	private final AtomicLong watermark = new AtomicLong();
+	//longest probe any put has needed, lookups never look further
+	private final AtomicInteger maxProbe = new AtomicInteger(PROBES - 1);
 	
 	private static final Logger log = LoggerFactory.getLogger(XidMap.class);
 	
 	public XidMap(){
-		xidMap = Collections.synchronizedMap(
-				new LinkedHashMap<Integer,Integer>(){
-					/**
-					 * 
-					 */
-					private static final long serialVersionUID = 1L;
-
-					@Override
-					public boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest)  
-					{
-						//when to remove the eldest entry
-						return size() >= max_xid_size ;   //size exceeded the max allowed
-					}
-				}
-				);
+		
 	}
 	
-	public synchronized boolean containsKey(int key){	
-		return xidMap.containsKey(key);
+	static int hash(int key){
+		//fibonacci hashing spreads keys allocated with a stride
+		return (key * 0x9E3779B9) >>> (32 - TABLE_BITS);
 	}
-	public synchronized int remove(int key){
-		return xidMap.remove(key);
+	
+	//live if not removed and one of the newest max_xid_size - 1 puts
+	private boolean isLive(long stamp, long newest){
+		return stamp > 0 && stamp > this.watermark.get() && newest - stamp + 1 < max_xid_size;
 	}
-	public synchronized int get(Object key){
-		return xidMap.get(key);
+	
+	/**
+	 * returns the slot holding a live mapping for the key or -1
+	 */
+	private int find(int key){
+		long newest = this.sequence.get();
+		int base = hash(key);
+		int probes = this.maxProbe.get();
+		for(int i = 0; i <= probes; i++){
+			int slot = (base + i) & MASK;
+			if(this.isLive(this.stamps.get(slot), newest) && this.keys.get(slot) == key){
+				return slot;
+			}
+		}
+		return -1;
 	}
 	
-	public synchronized void put(int key, int value) {
-		log.debug("Mapping XID: %d to %d", key, value);
-		xidMap.put(key, value);
+	public boolean containsKey(int key){
+		return this.find(key) >= 0;
+	}
+	
+	/**
+	 * removes the mapping for the key
+	 * @param key the switch xid
+	 * @return int the controller xid
+	 * @throws NoSuchElementException if the key is not mapped
+	 */
+	public int remove(int key){
+		while(true){
+			int slot = this.find(key);
+			if(slot < 0){
+				throw new NoSuchElementException("XID " + key + " is not mapped");
+			}
+			long stamp = this.stamps.get(slot);
+			int value = this.values.get(slot);
+			if(this.keys.get(slot) == key && this.stamps.compareAndSet(slot, stamp, 0)){
+				return value;
+			}
+		}
+	}
+	
+	/**
+	 * returns the mapping for the key
+	 * @param key the switch xid
+	 * @return int the controller xid
+	 * @throws NoSuchElementException if the key is not mapped
+	 */
+	public int get(int key){
+		return (int)this.read(key, VALUE);
+	}
+	
+	/**
+	 * returns the type that was stored with the key
+	 * @param key the switch xid
+	 * @return int the type passed to put
+	 * @throws NoSuchElementException if the key is not mapped
+	 */
+	public int getType(int key){
+		return (int)this.read(key, TYPE);
+	}
+	
+	/**
+	 * returns the send time that was stored with the key
+	 * @param key the switch xid
+	 * @return long the System.nanoTime passed to put, 0 if none was
+	 * @throws NoSuchElementException if the key is not mapped
+	 */
+	public long getSentTime(int key){
+		return this.read(key, SENT_TIME);
+	}
+	
+	//reads one field of the key's slot, retrying if the slot changes under us
+	private long read(int key, int field){
+		while(true){
+			int slot = this.find(key);
+			if(slot < 0){
+				throw new NoSuchElementException("XID " + key + " is not mapped");
+			}
+			long stamp = this.stamps.get(slot);
+			int mappedKey = this.keys.get(slot);
+			long value;
+			switch(field){
+			case VALUE:
+				value = this.values.get(slot);
+				break;
+			case TYPE:
+				value = this.types.get(slot);
+				break;
+			default:
+				value = this.sentTimes.get(slot);
+				break;
+			}
+			if(mappedKey == key && this.stamps.get(slot) == stamp){
+				return value;
+			}
+		}
+	}
+	
+	public void put(int key, int value){
+		this.put(key, value, 0, 0);
+	}
+	
+	/**
+	 * maps a switch xid to a controller xid
+	 * @param key the switch xid
+	 * @param value the controller xid
+	 * @param type the type of message sent
+	 * @param sentTime System.nanoTime when the message was sent
+	 */
+	public void put(int key, int value, int type, long sentTime) {
+		if(log.isDebugEnabled()){
+			log.debug("Mapping XID: {} to {}", key, value);
+		}
+		long seq = this.sequence.incrementAndGet();
+		int base = hash(key);
+		while(true){
+			//take the first dead slot, at most max_xid_size - 1 slots are live
+			//so one turns up within max_xid_size probes
+			int victim = -1;
+			int victimProbe = 0;
+			long victimStamp = 0;
+			int probes = this.maxProbe.get();
+			for(int i = 0; i < max_xid_size && (victim < 0 || i <= probes); i++){
+				int slot = (base + i) & MASK;
+				long stamp = this.stamps.get(slot);
+				if(stamp < 0){
+					continue;
+				}
+				if(!this.isLive(stamp, seq)){
+					if(victim < 0){
+						victim = slot;
+						victimProbe = i;
+						victimStamp = stamp;
+					}
+					continue;
+				}
+				if(this.keys.get(slot) == key){
+					//already mapped, keep its place in line like a LinkedHashMap
+					if(this.stamps.compareAndSet(slot, stamp, -stamp)){
+						this.values.set(slot, value);
+						this.types.set(slot, type);
+						this.sentTimes.set(slot, sentTime);
+						this.stamps.set(slot, stamp);
+						return;
+					}
+					//changed under us start over
+					victim = -1;
+					break;
+				}
+			}
+			if(victim < 0){
+				continue;
+			}
+			//lookups have to reach the slot before it shows up
+			this.growProbe(victimProbe);
+			if(this.stamps.compareAndSet(victim, victimStamp, -seq)){
+				this.keys.set(victim, key);
+				this.values.set(victim, value);
+				this.types.set(victim, type);
+				this.sentTimes.set(victim, sentTime);
+				this.stamps.set(victim, seq);
+				return;
+			}
+		}
 	}
 		
-		
-	public synchronized boolean removeToKey(int key) {
-		if (!xidMap.containsKey(key) ){
+	private void growProbe(int probe){
+		int current = this.maxProbe.get();
+		while(probe > current){
+			if(this.maxProbe.compareAndSet(current, probe)){
+				log.warn("XID probe distance grew to " + (probe + 1) + ", xids are colliding");
+				return;
+			}
+			current = this.maxProbe.get();
+		}
+	}
+	
+	/**
+	 * returns the longest probe a put has needed, 8 or less
+	 * unless the xids collide
+	 * @return int
+	 */
+	public int getMaxProbe(){
+		return this.maxProbe.get() + 1;
+	}
+	
+	/**
+	 * removes the key and every mapping put before it
+	 * @param key the switch xid
+	 * @return true if the key was mapped
+	 */
+	public boolean removeToKey(int key) {
+		int slot = this.find(key);
+		if(slot < 0){
 			return false;
 		}
-		Set<Entry<Integer, Integer>> entrySet = xidMap.entrySet();
-		Iterator<Entry<Integer, Integer>> it = entrySet.iterator();	
-		while (it.hasNext()) {
-			Entry<Integer, Integer> localEntry= it.next();
-			it.remove();
-			//once we've gotten to our xid, break out of this loop
-			if (localEntry.getKey() == key){
-				break;	
-			}
+		long stamp = this.stamps.get(slot);
+		if(stamp <= 0 || this.keys.get(slot) != key){
+			//removed out from under us
+			return false;
+		}
+		long current = this.watermark.get();
+		while(stamp > current && !this.watermark.compareAndSet(current, stamp)){
+			current = this.watermark.get();
 		}
 		return true;
 	}
 	
 }
-
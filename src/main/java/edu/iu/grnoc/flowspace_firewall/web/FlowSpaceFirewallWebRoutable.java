@@ -31,6 +31,7 @@ public class FlowSpaceFirewallWebRoutable implements RestletRoutable {
 		router.attach("/admin/set_state/{slice}/{dpid}/{status}/json", FlowSpaceFirewallSetState.class);
 		router.attach("/status/{slice}/{dpid}/json",SlicerStatusResource.class);
 		router.attach("/flows/{slice}/{dpid}/json", SlicerFlowResource.class);
+		router.attach("/latency/{slice}/{dpid}/json", SlicerLatencyResource.class);
 		router.attach("/admin/switches/json",FlowSpaceFirewallSwitches.class);
 		router.attach("/admin/slices/json", FlowSpaceFirewallSlices.class);
 		return router;
@@ -22,6 +22,7 @@ import org.openflow.protocol.statistics.OFStatistics;
 
 import edu.iu.grnoc.flowspace_firewall.Proxy;
 import edu.iu.grnoc.flowspace_firewall.Slicer;
+import edu.iu.grnoc.flowspace_firewall.SwitchStatsPoller;
 
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.module.IFloodlightService;
@@ -34,6 +35,7 @@ public interface IFlowSpaceFirewallService extends IFloodlightService {
 	public List<OFStatistics> getStats(long switchId);
 	public List<OFStatistics> getSlicedFlowStats(long switchId, String sliceName);
 	public List<Proxy> getSwitchProxies(long switchId);
+	public SwitchStatsPoller getStatsPoller(long switchId);
 	public List<HashMap<Long,Slicer>> getSlices();
 	public List<IOFSwitch> getSwitches();
 	public HashMap<Long,Slicer> getSlice(String name);
@@ -0,0 +1,103 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall.web;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.openflow.protocol.OFType;
+import org.openflow.util.HexString;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.iu.grnoc.flowspace_firewall.LatencyHistogram;
+import edu.iu.grnoc.flowspace_firewall.Proxy;
+
+/**
+ * returns the switch round trip time histograms for a slice
+ * on a switch, one entry per type of message sent to the switch
+ * @author aragusa
+ *
+ */
+public class SlicerLatencyResource extends ServerResource{
+	protected static Logger logger = LoggerFactory.getLogger(SlicerLatencyResource.class);
+	@Get("json")
+	public HashMap<String, Object> getSliceLatency(){
+		IFlowSpaceFirewallService iFSFs = (IFlowSpaceFirewallService)getContext().getAttributes().get(IFlowSpaceFirewallService.class.getCanonicalName());
+		String dpidStr = (String) getRequestAttributes().get("dpid");
+		Long dpid = HexString.toLong(dpidStr);
+		String sliceStr = (String) getRequestAttributes().get("slice");
+		
+		List<Proxy> proxies = iFSFs.getSwitchProxies(dpid);
+		HashMap<String, Object> results = new HashMap<String, Object>();
+		if(proxies == null){
+			logger.info("Unable to fetch proxies for switch " + dpidStr + " it is not connected");
+			results.put("Error", "Switch " + dpidStr + " is not connected");
+			return results;
+		}
+		
+		Iterator <Proxy> it = proxies.iterator();
+		Proxy myProxy = null;
+		while(it.hasNext()){
+			Proxy p = it.next();
+			if(p.getSlicer().getSliceName().equals(sliceStr)){
+				myProxy = p;
+			}
+		}
+		
+		if(myProxy == null){
+			logger.warn("Unable to find slice/proxy for " + sliceStr + ":" + dpidStr);
+			results.put("Error",  "Switch " + dpidStr + " is not part of slice " + sliceStr);
+			return results;
+		}
+		
+		for(Map.Entry<OFType, LatencyHistogram> entry : myProxy.getLatencyHistograms().entrySet()){
+			LatencyHistogram histogram = entry.getValue();
+			HashMap<String, Object> stats = new HashMap<String, Object>();
+			stats.put("count", histogram.getCount());
+			stats.put("mean_us", histogram.getMeanMicros());
+			stats.put("max_us", histogram.getMaxMicros());
+			stats.put("p50_us", histogram.getPercentileMicros(50));
+			stats.put("p90_us", histogram.getPercentileMicros(90));
+			stats.put("p99_us", histogram.getPercentileMicros(99));
+			//bucket upper bound in us -> count, the last bucket has no bound
+			List<HashMap<String, Object>> buckets = new ArrayList<HashMap<String, Object>>();
+			long[] counts = histogram.getBuckets();
+			for(int i = 0; i < counts.length; i++){
+				if(counts[i] == 0){
+					continue;
+				}
+				HashMap<String, Object> bucket = new HashMap<String, Object>();
+				long limit = LatencyHistogram.getBucketLimit(i);
+				bucket.put("below_us", limit == Long.MAX_VALUE ? "inf" : limit);
+				bucket.put("count", counts[i]);
+				buckets.add(bucket);
+			}
+			stats.put("buckets", buckets);
+			results.put(entry.getKey().toString(), stats);
+		}
+		results.put("DPID", myProxy.getSwitch().getStringId());
+		
+		return results;
+		
+	}	
+}
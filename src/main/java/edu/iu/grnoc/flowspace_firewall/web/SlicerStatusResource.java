@@ -26,8 +26,11 @@ import org.restlet.resource.ServerResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.iu.grnoc.flowspace_firewall.MessageBudget;
 import edu.iu.grnoc.flowspace_firewall.Proxy;
 import edu.iu.grnoc.flowspace_firewall.Slicer;
+import edu.iu.grnoc.flowspace_firewall.SwitchStatsPoller;
+import edu.iu.grnoc.flowspace_firewall.SwitchWriteCoalescer;
 
 public class SlicerStatusResource extends ServerResource{
 	protected static Logger logger = LoggerFactory.getLogger(SlicerStatusResource.class);
@@ -63,6 +66,16 @@ public class SlicerStatusResource extends ServerResource{
 			results.put("DPID", dpidStr );
 			results.put("max_packet_in_rate",  mySlice.getPacketInRate());
 			results.put("packet_in_rate", 0);
+			results.put("packet_in_drops", 0);
+			results.put("packet_in_overload_drops", 0);
+			results.put("packet_in_sampled", 0);
+			for(MessageBudget.MessageClass cls : MessageBudget.MessageClass.values()){
+				results.put(cls.getConfigName() + "_rate", 0);
+				results.put(cls.getConfigName() + "_max_rate", mySlice.getMessageBudget().getMaxRate(cls));
+				results.put(cls.getConfigName() + "_rejects", mySlice.getMessageBudget().getRejects(cls));
+			}
+			results.put("flow_cache_hits", mySlice.getFlowCacheHits());
+			results.put("flow_cache_misses", mySlice.getFlowCacheMisses());
 			
 		}
 		
@@ -88,7 +101,42 @@ public class SlicerStatusResource extends ServerResource{
 		results.put("DPID", myProxy.getSwitch().getStringId());
 		results.put("max_packet_in_rate",  myProxy.getSlicer().getPacketInRate());
 		results.put("packet_in_rate", myProxy.getPacketInRate());
+		results.put("packet_in_drops", myProxy.getPacketInDrops());
+		results.put("packet_in_overload", myProxy.getPacketInGovernor().getState().toString());
+		results.put("packet_in_overload_drops", myProxy.getPacketInGovernor().getDropped());
+		results.put("packet_in_sampled", myProxy.getPacketInGovernor().getSampled());
 		results.put("max_flow_rule", myProxy.getSlicer().getMaxFlowRate());
+		results.put("flow_burst", myProxy.getSlicer().getFlowBurst());
+		results.put("packet_in_burst", myProxy.getSlicer().getPacketInBurst());
+		MessageBudget budget = myProxy.getSlicer().getMessageBudget();
+		for(MessageBudget.MessageClass cls : MessageBudget.MessageClass.values()){
+			results.put(cls.getConfigName() + "_rate", budget.getRate(cls));
+			results.put(cls.getConfigName() + "_max_rate", budget.getMaxRate(cls));
+			results.put(cls.getConfigName() + "_rejects", budget.getRejects(cls));
+		}
+		results.put("flow_cache_hits", myProxy.getSlicer().getFlowCacheHits());
+		results.put("flow_cache_misses", myProxy.getSlicer().getFlowCacheMisses());
+		//switch wide, shared with the other slices on the switch
+		SwitchWriteCoalescer writer = myProxy.getWriteCoalescer();
+		results.put("switch_write_batches", writer.getBatchCount());
+		results.put("switch_write_messages", writer.getMessageCount());
+		results.put("switch_write_bytes", writer.getByteCount());
+		results.put("switch_write_max_batch", writer.getMaxBatch());
+		results.put("switch_write_mean_batch", writer.getMeanBatch());
+		results.put("switch_unacked_bytes", writer.getBackpressure().getUnackedBytes());
+		results.put("switch_reads_paused", writer.getBackpressure().isPaused());
+		results.put("switch_read_pauses", writer.getBackpressure().getPauseCount());
+		results.put("switch_read_stalls", writer.getBackpressure().getStallCount());
+		SwitchStatsPoller poller = iFSFs.getStatsPoller(dpid);
+		if(poller != null){
+			results.put("switch_stats_polls", poller.getPollCount());
+			results.put("switch_stats_poll_ms", poller.getLastPollMillis());
+			results.put("switch_stats_poll_max_ms", poller.getMaxPollMillis());
+			results.put("switch_stats_poll_mean_ms", poller.getMeanPollMillis());
+			results.put("switch_stats_last_poll", poller.getLastPollTime());
+			results.put("switch_stats_poll_interval_ms", poller.getIntervalMillis());
+			results.put("switch_stats_changed_flows", poller.getChangedFlows());
+		}
 		
 		return results;
 		
@@ -0,0 +1,192 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DefaultChannelFuture;
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFEchoReply;
+import org.openflow.protocol.OFMessage;
+
+public class ChannelWriteBatchTest {
+
+	Channel channel;
+	boolean connected;
+	boolean writable;
+	//the future handed back for each write, null means already sent
+	ChannelFuture nextFuture;
+	//one entry per write to the channel
+	List<List<OFMessage>> writes;
+
+	@Before
+	public void setup(){
+		writes = new ArrayList<List<OFMessage>>();
+		connected = true;
+		writable = true;
+		nextFuture = null;
+		channel = EasyMock.createNiceMock(Channel.class);
+		EasyMock.expect(channel.isConnected()).andAnswer(new IAnswer<Boolean>() {
+			public Boolean answer() {
+				return connected;
+			}
+		}).anyTimes();
+		EasyMock.expect(channel.isWritable()).andAnswer(new IAnswer<Boolean>() {
+			public Boolean answer() {
+				return writable;
+			}
+		}).anyTimes();
+		EasyMock.expect(channel.write(EasyMock.isA(List.class))).andAnswer(new IAnswer<ChannelFuture>() {
+			@SuppressWarnings("unchecked")
+			public ChannelFuture answer() {
+				writes.add(new ArrayList<OFMessage>((List<OFMessage>)EasyMock.getCurrentArguments()[0]));
+				if(nextFuture != null){
+					return nextFuture;
+				}
+				return Channels.succeededFuture(channel);
+			}
+		}).anyTimes();
+		EasyMock.replay(channel);
+	}
+
+	private OFMessage echo(int xid){
+		OFEchoReply reply = new OFEchoReply();
+		reply.setXid(xid);
+		return reply;
+	}
+
+	@Test
+	public void testWriteOutsideTrain(){
+		ChannelWriteBatch batch = new ChannelWriteBatch(channel);
+		batch.write(echo(1));
+		batch.write(echo(2));
+		assertEquals(2, writes.size());
+		assertEquals(2, batch.getBatchCount());
+		assertEquals(1, batch.getMaxBatch());
+	}
+
+	@Test
+	public void testTrainWritesOnce(){
+		ChannelWriteBatch batch = new ChannelWriteBatch(channel);
+		List<OFMessage> expected = new ArrayList<OFMessage>();
+		WriteTrain.begin();
+		try{
+			for(int i = 0; i < 100; i++){
+				OFMessage msg = echo(i);
+				expected.add(msg);
+				batch.write(msg);
+			}
+			assertEquals(0, writes.size());
+			assertEquals(100 * OFMessage.MINIMUM_LENGTH, batch.getPendingBytes());
+		}finally{
+			WriteTrain.end();
+		}
+		assertEquals(1, writes.size());
+		assertEquals("order is kept", expected, writes.get(0));
+		assertEquals(100, batch.getMessageCount());
+		assertEquals(100, batch.getMaxBatch());
+		assertEquals(0, batch.getPendingBytes());
+	}
+
+	@Test
+	public void testByteLimit(){
+		ChannelWriteBatch batch = new ChannelWriteBatch(channel, 10 * OFMessage.MINIMUM_LENGTH);
+		WriteTrain.begin();
+		try{
+			for(int i = 0; i < 25; i++){
+				batch.write(echo(i));
+			}
+			assertEquals(2, writes.size());
+		}finally{
+			WriteTrain.end();
+		}
+		assertEquals(3, writes.size());
+		assertEquals(10, writes.get(0).size());
+		assertEquals(5, writes.get(2).size());
+	}
+
+	@Test
+	public void testDisconnected(){
+		ChannelWriteBatch batch = new ChannelWriteBatch(channel);
+		WriteTrain.begin();
+		try{
+			batch.write(echo(1));
+			connected = false;
+		}finally{
+			WriteTrain.end();
+		}
+		assertEquals("dropped once the channel went away", 0, writes.size());
+		assertEquals(0, batch.getPendingBytes());
+		assertEquals(0, batch.getBatchCount());
+	}
+
+	@Test
+	public void testSaturatedByUnsent(){
+		ChannelWriteBatch batch = new ChannelWriteBatch(channel);
+		batch.setQueueLimits(1000000, 3);
+		//the controller is not reading so the writes never complete
+		DefaultChannelFuture stuck = new DefaultChannelFuture(channel, false);
+		nextFuture = stuck;
+		batch.write(echo(1));
+		batch.write(echo(2));
+		assertFalse(batch.isSaturated());
+		batch.write(echo(3));
+		assertEquals(3, batch.getUnsentMessages());
+		assertEquals(3 * OFMessage.MINIMUM_LENGTH, batch.getUnsentBytes());
+		assertTrue("message limit reached", batch.isSaturated());
+		stuck.setSuccess();
+		assertEquals(0, batch.getUnsentMessages());
+		assertEquals(0, batch.getUnsentBytes());
+		assertFalse(batch.isSaturated());
+
+		batch.setQueueLimits(2 * OFMessage.MINIMUM_LENGTH, 1000);
+		WriteTrain.begin();
+		try{
+			batch.write(echo(4));
+			assertFalse(batch.isSaturated());
+			batch.write(echo(5));
+			assertTrue("byte limit counts what is still queued", batch.isSaturated());
+		}finally{
+			WriteTrain.end();
+		}
+	}
+
+	@Test
+	public void testSaturatedWhenNotWritable(){
+		ChannelWriteBatch batch = new ChannelWriteBatch(channel);
+		assertFalse(batch.isSaturated());
+		writable = false;
+		assertTrue(batch.isSaturated());
+	}
+
+	@Test
+	public void testDisconnectedReleasesUnsent(){
+		ChannelWriteBatch batch = new ChannelWriteBatch(channel);
+		connected = false;
+		batch.write(echo(1));
+		assertEquals(0, batch.getUnsentMessages());
+		assertEquals(0, batch.getUnsentBytes());
+	}
+}
@@ -73,6 +73,19 @@ public class ConfigParserTest {
 		assertTrue("config has overlapping flowspace, slice should be empty was " + slices.size(), slices.size() == 0);
 	}
 	
+	@Test
+	public void testOverlappingUntaggedFlowSpace() throws IOException, SAXException, XPathExpressionException, ParserConfigurationException, InvalidConfigException{
+		thrown.expect(InvalidConfigException.class);
+		ConfigParser.parseConfig("src/test/resources/overlapping_untagged_flowspace.xml");
+	}
+	
+	@Test
+	public void testDescribeOverlappingVlans(){
+		assertEquals("untagged", ConfigParser.describeVlans(VLANRange.UNTAGGED, VLANRange.UNTAGGED));
+		assertEquals("vlan 2000", ConfigParser.describeVlans((short)2000, (short)2000));
+		assertEquals("vlans 100-200", ConfigParser.describeVlans((short)100, (short)200));
+	}
+	
 	@Test
 	public void testNonOverlappingFlowSpaceValidConfig() throws IOException, SAXException, XPathExpressionException, ParserConfigurationException, InvalidConfigException{
 		ArrayList<HashMap<Long, Slicer>> slices = ConfigParser.parseConfig("src/test/resources/good_config.xml");
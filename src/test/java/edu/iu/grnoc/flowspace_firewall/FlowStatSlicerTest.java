@@ -19,10 +19,12 @@ import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.easymock.*;
 
@@ -35,6 +37,7 @@ import org.junit.Test;
 import org.junit.Before;
 import org.openflow.protocol.OFFlowMod;
 import org.openflow.protocol.OFMatch;
+import org.openflow.protocol.OFStatisticsReply;
 import org.openflow.protocol.Wildcards.Flag;
 import org.openflow.protocol.action.OFAction;
 import org.openflow.protocol.action.OFActionOutput;
@@ -986,6 +989,24 @@ public class FlowStatSlicerTest {
 		assertEquals("Number of sliced stat is same as number of total stats",  allowedStats.size(),slicedStats.size());
 	}
 	
+	@Test
+	public void testSliceStatsExpired() {
+		cache = new FlowStatCache(fsfw);
+		cache.setFlowCache(sw.getId(), allowedStats);
+		List<OFStatistics> slicedStats = cache.getSlicedFlowStats(sw.getId(), slicer.getSliceName());
+		assertEquals("Number of sliced stat is same as number of total stats",  allowedStats.size(),slicedStats.size());
+		for(OFStatistics stat : slicedStats){
+			((FSFWOFFlowStatisticsReply)stat).setLastSeen(0);
+		}
+		cache.setFlowCache(sw.getId(), new ArrayList<OFStatistics>());
+		slicedStats = cache.getSlicedFlowStats(sw.getId(), slicer.getSliceName());
+		assertEquals("all the stats expired", 0, slicedStats.size());
+		//the flows mapped to the expired stats have to be cached again
+		cache.setFlowCache(sw.getId(), allowedStats);
+		slicedStats = cache.getSlicedFlowStats(sw.getId(), slicer.getSliceName());
+		assertEquals("Number of sliced stat is same as number of total stats",  allowedStats.size(),slicedStats.size());
+	}
+	
 	@Test
 	public void testSliceStatsMixed(){
 		cache = new FlowStatCache(fsfw);
@@ -1059,6 +1080,45 @@ public class FlowStatSlicerTest {
 	}
 	
 	
+	@Test
+	public void testExpandedFlowStatsReAdded(){
+		cache = new FlowStatCache(fsfw);
+		
+		OFFlowMod mod = new OFFlowMod();
+		OFMatch match = new OFMatch();
+		match.setDataLayerVirtualLan((short)300);
+		match.setWildcards(match.getWildcardObj().matchOn(Flag.DL_VLAN));
+		mod.setMatch(match);
+		List<OFAction> actions = new ArrayList<OFAction>();
+		OFActionOutput output = new OFActionOutput();
+		output.setPort((short)65533);
+		actions.add(output);
+		mod.setActions(actions);
+		
+		//the deleted flow has to be skipped in favor of the one added again
+		cache.addFlowMod(sw.getId(), slicerExpanded.getSliceName(), mod);
+		cache.delFlowMod(sw.getId(), slicerExpanded.getSliceName(), mod);
+		OFFlowMod again = new OFFlowMod();
+		again.setMatch(match.clone());
+		again.setActions(actions);
+		cache.addFlowMod(sw.getId(), slicerExpanded.getSliceName(), again);
+		cache.setFlowCache(sw.getId(), expandedStats);
+		List<OFStatistics> slicedStats = cache.getSlicedFlowStats(sw.getId(), slicerExpanded.getSliceName());	
+		assertNotNull("Sliced Stats with no allowed stats returend ok", slicedStats);
+		assertEquals("Sliced stats", 6, slicedStats.size());
+		OFFlowStatisticsReply flowStat = (OFFlowStatisticsReply) slicedStats.get(0);
+		assertEquals("flowStat byte count is correct", 4L,flowStat.getByteCount());
+		assertEquals("flowStat packet count is correct", 4L,flowStat.getPacketCount());
+		
+		//polling again finds the same stats through the mapping
+		cache.setFlowCache(sw.getId(), expandedStats);
+		slicedStats = cache.getSlicedFlowStats(sw.getId(), slicerExpanded.getSliceName());
+		assertEquals("Sliced stats", 6, slicedStats.size());
+		flowStat = (OFFlowStatisticsReply) slicedStats.get(0);
+		assertEquals("flowStat byte count is correct", 4L,flowStat.getByteCount());
+	}
+	
+	
 	@Test
 	public void testExpandedFlowStatsManaged(){
 		cache = new FlowStatCache(fsfw);
@@ -1089,4 +1149,149 @@ public class FlowStatSlicerTest {
 		assertEquals("flowStat packet count is correct", 4L,flowStat.getPacketCount());
 	}
 
+	private long slicedByteCount(String sliceName){
+		long bytes = 0;
+		for(OFStatistics stat : cache.getSlicedFlowStats(sw.getId(), sliceName)){
+			bytes += ((OFFlowStatisticsReply)stat).getByteCount();
+		}
+		return bytes;
+	}
+	
+	private OFStatisticsReply buildStatsSegment(int xid, List<OFStatistics> stats, boolean more){
+		OFStatisticsReply reply = new OFStatisticsReply();
+		reply.setXid(xid);
+		reply.setStatistics(stats);
+		reply.setFlags(more ? FlowStatsStream.REPLY_MORE : (short)0);
+		return reply;
+	}
+	
+	@Test
+	public void testStreamedFlowStats() throws InterruptedException{
+		cache = new FlowStatCache(fsfw);
+		cache.setFlowCache(sw.getId(), allowedStats);
+		long lastPoll = slicedByteCount(slicer.getSliceName());
+		for(OFStatistics stat : allowedStats){
+			OFFlowStatisticsReply flowStat = (OFFlowStatisticsReply)stat;
+			flowStat.setByteCount(flowStat.getByteCount() + 1000);
+		}
+		
+		long generation = cache.beginFlowCache(sw.getId());
+		FlowStatsStream stream = new FlowStatsStream(sw.getId(), cache, generation, 42);
+		//a reply to another request is not ours
+		stream.receive(sw, buildStatsSegment(41, allowedStats, false), null);
+		assertEquals("other xid ignored", 0, stream.getSegments());
+		
+		stream.receive(sw, buildStatsSegment(42, allowedStats.subList(0, 2), true), null);
+		assertFalse("poll is not done until the last segment", stream.await(0, TimeUnit.MILLISECONDS));
+		assertEquals("counters of the last poll until the poll ends", lastPoll, slicedByteCount(slicer.getSliceName()));
+		
+		stream.receive(sw, buildStatsSegment(42, allowedStats.subList(2, allowedStats.size()), false), null);
+		assertTrue("poll is done", stream.await(0, TimeUnit.MILLISECONDS));
+		assertEquals("segments", 2, stream.getSegments());
+		assertEquals("flows", allowedStats.size(), stream.getFlows());
+		assertTrue(cache.endFlowCache(sw.getId(), generation));
+		assertEquals("new counters published", lastPoll + 1000 * allowedStats.size(), slicedByteCount(slicer.getSliceName()));
+		assertEquals("Number of sliced stat is same as number of total stats", allowedStats.size(), cache.getSlicedFlowStats(sw.getId(), slicer.getSliceName()).size());
+		assertNull("streamed replies are not kept", cache.getSwitchFlowStats(sw.getId()));
+		assertEquals("every flow changed", allowedStats.size(), cache.getChangedFlows(sw.getId()));
+	}
+	
+	@Test
+	public void testStreamedFlowStatsStale() throws InterruptedException{
+		cache = new FlowStatCache(fsfw);
+		cache.setFlowCache(sw.getId(), allowedStats);
+		long oldGeneration = cache.beginFlowCache(sw.getId());
+		FlowStatsStream stream = new FlowStatsStream(sw.getId(), cache, oldGeneration, 42);
+		long generation = cache.beginFlowCache(sw.getId());
+		
+		stream.receive(sw, buildStatsSegment(42, allowedStats, true), null);
+		assertFalse("stale poll is not complete", stream.await(0, TimeUnit.MILLISECONDS));
+		assertFalse("stale poll can not end", cache.endFlowCache(sw.getId(), oldGeneration));
+		assertEquals("nothing to compare the first poll with", -1, cache.getChangedFlows(sw.getId()));
+		
+		assertTrue(cache.addFlowStats(sw.getId(), generation, allowedStats.subList(0, 1)));
+		assertTrue(cache.endFlowCache(sw.getId(), generation));
+		assertEquals("stale segment not part of the new poll", allowedStats.size() - 1, cache.getChangedFlows(sw.getId()));
+		assertNull("went away", cache.getFlowPacketCount(sw.getId(), ((OFFlowStatisticsReply)allowedStats.get(1)).getMatch()));
+		assertEquals("Number of sliced stat is same as number of total stats", allowedStats.size(), cache.getSlicedFlowStats(sw.getId(), slicer.getSliceName()).size());
+	}
+	
+	@Test
+	public void testStreamedFlowStatsAborted(){
+		cache = new FlowStatCache(fsfw);
+		cache.setFlowCache(sw.getId(), allowedStats);
+		long lastPoll = slicedByteCount(slicer.getSliceName());
+		for(OFStatistics stat : cache.getSlicedFlowStats(sw.getId(), slicer.getSliceName())){
+			((FSFWOFFlowStatisticsReply)stat).setLastSeen(0);
+		}
+		for(OFStatistics stat : allowedStats){
+			OFFlowStatisticsReply flowStat = (OFFlowStatisticsReply)stat;
+			flowStat.setByteCount(flowStat.getByteCount() + 1000);
+		}
+		
+		long generation = cache.beginFlowCache(sw.getId());
+		assertTrue(cache.addFlowStats(sw.getId(), generation, allowedStats.subList(0, 1)));
+		cache.abortFlowCache(sw.getId(), generation);
+		assertFalse("aborted poll can not end", cache.endFlowCache(sw.getId(), generation));
+		//nothing is swept or published from an incomplete poll
+		assertEquals("Number of sliced stat is same as number of total stats", allowedStats.size(), cache.getSlicedFlowStats(sw.getId(), slicer.getSliceName()).size());
+		assertEquals("counters of the last poll kept", lastPoll, slicedByteCount(slicer.getSliceName()));
+	}
+
+	@Test
+	public void testStreamedFlowStatsNotRetained() throws InterruptedException{
+		cache = new FlowStatCache(fsfw);
+		long generation = cache.beginFlowCache(sw.getId());
+		FlowStatsStream stream = new FlowStatsStream(sw.getId(), cache, generation, 42);
+		List<WeakReference<OFStatistics>> segmentStats = new ArrayList<WeakReference<OFStatistics>>();
+		for(int i = 0; i < allowedStats.size(); i++){
+			//a fresh copy for each segment so only the cache could hold on to it
+			OFFlowStatisticsReply original = (OFFlowStatisticsReply)allowedStats.get(i);
+			OFFlowStatisticsReply stat = new OFFlowStatisticsReply();
+			stat.setMatch(original.getMatch().clone());
+			stat.setActions(original.getActions());
+			stat.setPacketCount(10);
+			stat.setByteCount(original.getByteCount());
+			segmentStats.add(new WeakReference<OFStatistics>(stat));
+			List<OFStatistics> segment = new ArrayList<OFStatistics>();
+			segment.add(stat);
+			stream.receive(sw, buildStatsSegment(42, segment, i < allowedStats.size() - 1), null);
+		}
+		assertTrue("poll is done", stream.await(0, TimeUnit.MILLISECONDS));
+		assertTrue(cache.endFlowCache(sw.getId(), generation));
+		assertEquals("Number of sliced stat is same as number of total stats", allowedStats.size(), cache.getSlicedFlowStats(sw.getId(), slicer.getSliceName()).size());
+		assertEquals("counters kept per flow", Long.valueOf(10), cache.getFlowPacketCount(sw.getId(), ((OFFlowStatisticsReply)allowedStats.get(0)).getMatch()));
+		
+		for(int i = 0; i < 50 && !allCleared(segmentStats); i++){
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertTrue("the segments are not retained by the cache", allCleared(segmentStats));
+	}
+	
+	private boolean allCleared(List<WeakReference<OFStatistics>> refs){
+		for(WeakReference<OFStatistics> ref : refs){
+			if(ref.get() != null){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Test
+	public void testChangedFlowsCounted(){
+		cache = new FlowStatCache(fsfw);
+		cache.setFlowCache(sw.getId(), allowedStats);
+		assertEquals("nothing to compare the first poll with", -1, cache.getChangedFlows(sw.getId()));
+		cache.setFlowCache(sw.getId(), allowedStats);
+		assertEquals("nothing changed", 0, cache.getChangedFlows(sw.getId()));
+		cache.setFlowCache(sw.getId(), allowedStats.subList(0, 1));
+		assertEquals("the rest went away", allowedStats.size() - 1, cache.getChangedFlows(sw.getId()));
+		OFFlowStatisticsReply first = (OFFlowStatisticsReply)allowedStats.get(0);
+		first.setPacketCount(first.getPacketCount() + 5);
+		cache.setFlowCache(sw.getId(), allowedStats.subList(0, 2));
+		assertEquals("one changed and one is new", 2, cache.getChangedFlows(sw.getId()));
+		assertEquals(Long.valueOf(first.getPacketCount()), cache.getFlowPacketCount(sw.getId(), first.getMatch()));
+	}
+
 }
@@ -0,0 +1,66 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testEmpty(){
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMeanMicros());
+		assertEquals(0, histogram.getMaxMicros());
+		assertEquals(0, histogram.getPercentileMicros(99));
+	}
+	
+	@Test
+	public void testRecord(){
+		LatencyHistogram histogram = new LatencyHistogram();
+		//90 fast answers and 10 slow ones
+		for(int i = 0; i < 90; i++){
+			histogram.record(300000L);
+		}
+		for(int i = 0; i < 10; i++){
+			histogram.record(50000000L);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(50000, histogram.getMaxMicros());
+		assertEquals((90 * 300 + 10 * 50000) / 100, histogram.getMeanMicros());
+		//300us falls below 512us, 50ms below 65536us
+		assertEquals(512, histogram.getPercentileMicros(50));
+		assertEquals(512, histogram.getPercentileMicros(90));
+		assertEquals("capped at the max seen", 50000, histogram.getPercentileMicros(99));
+		long[] buckets = histogram.getBuckets();
+		assertEquals(90, buckets[9]);
+		assertEquals(10, buckets[16]);
+	}
+	
+	@Test
+	public void testBounds(){
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(500);
+		histogram.record(Long.MAX_VALUE / 2);
+		long[] buckets = histogram.getBuckets();
+		assertEquals("negative and sub microsecond in the first bucket", 2, buckets[0]);
+		assertEquals("huge in the last bucket", 1, buckets[LatencyHistogram.BUCKETS - 1]);
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.getBucketLimit(LatencyHistogram.BUCKETS - 1));
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.openflow.protocol.OFType;
+
+import edu.iu.grnoc.flowspace_firewall.MessageBudget.MessageClass;
+
+public class MessageBudgetTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void testClassify(){
+		assertEquals(MessageClass.FLOW_MOD, MessageClass.classify(OFType.FLOW_MOD));
+		assertEquals(MessageClass.PACKET_OUT, MessageClass.classify(OFType.PACKET_OUT));
+		assertEquals(MessageClass.STATS, MessageClass.classify(OFType.STATS_REQUEST));
+		assertEquals(MessageClass.OTHER, MessageClass.classify(OFType.BARRIER_REQUEST));
+		assertEquals(MessageClass.OTHER, MessageClass.classify(OFType.PORT_MOD));
+	}
+
+	@Test
+	public void testClassesAreSeparate(){
+		MessageBudget budget = new MessageBudget(2, 1);
+		assertTrue(budget.okToProcess(OFType.STATS_REQUEST));
+		assertTrue(budget.okToProcess(OFType.STATS_REQUEST));
+		assertFalse("stats budget is used up", budget.okToProcess(OFType.STATS_REQUEST));
+		assertFalse("stats budget is used up", budget.okToProcess(OFType.STATS_REQUEST));
+		assertTrue("flow mods have their own", budget.okToProcess(OFType.FLOW_MOD));
+		assertTrue("packet outs have their own", budget.okToProcess(OFType.PACKET_OUT));
+		assertTrue("everything else has its own", budget.okToProcess(OFType.BARRIER_REQUEST));
+		assertEquals(2, budget.getRejects(MessageClass.STATS));
+		assertEquals(0, budget.getRejects(MessageClass.FLOW_MOD));
+		assertEquals(0, budget.getRejects(MessageClass.PACKET_OUT));
+		assertEquals(0, budget.getRejects(MessageClass.OTHER));
+		//the rates decay over time, read them all at one instant
+		long now = System.nanoTime();
+		assertTrue(budget.getRate(MessageClass.STATS, now) > budget.getRate(MessageClass.FLOW_MOD, now));
+		assertEquals(budget.getRate(MessageClass.STATS, now) + budget.getRate(MessageClass.FLOW_MOD, now)
+				+ budget.getRate(MessageClass.PACKET_OUT, now) + budget.getRate(MessageClass.OTHER, now), budget.getRate(now), 0.000001);
+	}
+
+	@Test
+	public void testOwnRateIsKept(){
+		MessageBudget budget = new MessageBudget(0, 100);
+		budget.setRate(MessageClass.STATS, 0);
+		budget.setBurst(MessageClass.PACKET_OUT, 5);
+		budget.setDefaultRate(200);
+		budget.setDefaultBurst(50);
+		assertEquals(200, budget.getDefaultRate());
+		assertEquals(50, budget.getDefaultBurst());
+		assertEquals(200, budget.getMaxRate(MessageClass.FLOW_MOD));
+		assertEquals(50, budget.getBurst(MessageClass.FLOW_MOD));
+		assertEquals("stats keeps its own rate", 0, budget.getMaxRate(MessageClass.STATS));
+		assertEquals(200, budget.getMaxRate(MessageClass.PACKET_OUT));
+		assertEquals("packet outs keep their own burst", 5, budget.getBurst(MessageClass.PACKET_OUT));
+		assertFalse("stats are not allowed at all", budget.okToProcess(OFType.STATS_REQUEST));
+		assertTrue(budget.okToProcess(OFType.FLOW_MOD));
+	}
+
+	@Test
+	public void testDefaultBurst(){
+		MessageBudget budget = new MessageBudget(0, 20);
+		assertEquals("a second worth of the rate", 20, budget.getDefaultBurst());
+		for(int i = 0; i < 20; i++){
+			assertTrue(budget.okToProcess(OFType.PACKET_OUT));
+		}
+		assertFalse(budget.okToProcess(OFType.PACKET_OUT));
+		assertEquals(1, budget.getRejects(MessageClass.PACKET_OUT));
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFType;
+import org.openflow.protocol.factory.MessageParseException;
+
+public class OFMessageLengthDecoderTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+	
+	Channel channel;
+	OFMessageLengthDecoder decoder;
+	
+	@Before
+	public void setup(){
+		channel = createNiceMock(Channel.class);
+		expect(channel.isConnected()).andReturn(true).anyTimes();
+		EasyMock.replay(channel);
+		decoder = new OFMessageLengthDecoder();
+	}
+	
+	//writes an OpenFlow 1.0 header with the length we claim plus padding
+	private void writeMessage(ChannelBuffer buf, OFType type, int length, int xid, int bodyLength){
+		buf.writeByte(1);
+		buf.writeByte(type.getTypeValue());
+		buf.writeShort(length);
+		buf.writeInt(xid);
+		buf.writeZero(bodyLength);
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testValidMessages() throws Exception{
+		ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+		writeMessage(buf, OFType.BARRIER_REQUEST, 8, 100, 0);
+		writeMessage(buf, OFType.BARRIER_REQUEST, 8, 101, 0);
+		List<OFMessage> messages = (List<OFMessage>) decoder.decode(null, channel, buf);
+		assertEquals("both messages decoded", 2, messages.size());
+		assertEquals(100, messages.get(0).getXid());
+		assertEquals(101, messages.get(1).getXid());
+		assertFalse("buffer consumed", buf.readable());
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testPartialMessage() throws Exception{
+		ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+		writeMessage(buf, OFType.BARRIER_REQUEST, 8, 100, 0);
+		buf.writeByte(1);
+		buf.writeByte(OFType.BARRIER_REQUEST.getTypeValue());
+		buf.writeShort(8);
+		List<OFMessage> messages = (List<OFMessage>) decoder.decode(null, channel, buf);
+		assertEquals("only the whole message decoded", 1, messages.size());
+		assertEquals("partial message left in the buffer", 4, buf.readableBytes());
+		assertNull("nothing more to decode", decoder.decode(null, channel, buf));
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testInvalidLengthRejected() throws Exception{
+		ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+		//a barrier request claiming 4 more bytes than it has
+		writeMessage(buf, OFType.BARRIER_REQUEST, 12, 100, 4);
+		writeMessage(buf, OFType.BARRIER_REQUEST, 8, 101, 0);
+		List<OFMessage> messages = (List<OFMessage>) decoder.decode(null, channel, buf);
+		assertEquals("invalid message dropped", 1, messages.size());
+		assertEquals("next message still decoded", 101, messages.get(0).getXid());
+		assertFalse("buffer consumed", buf.readable());
+		
+		buf = ChannelBuffers.dynamicBuffer();
+		writeMessage(buf, OFType.BARRIER_REQUEST, 12, 102, 4);
+		assertNull("only an invalid message", decoder.decode(null, channel, buf));
+		assertFalse("buffer consumed", buf.readable());
+	}
+	
+	@Test
+	public void testImpossibleLength() throws Exception{
+		ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+		writeMessage(buf, OFType.BARRIER_REQUEST, 4, 100, 0);
+		thrown.expect(MessageParseException.class);
+		decoder.decode(null, channel, buf);
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import net.floodlightcontroller.packet.Ethernet;
+
+import org.junit.Test;
+import org.openflow.protocol.OFMatch;
+
+public class PacketHeaderTest {
+
+	private byte[] buildPacket(short vlanId){
+		Ethernet pkt = new Ethernet();
+		pkt.setDestinationMACAddress("aa:bb:cc:dd:ee:ff");
+		pkt.setSourceMACAddress("ff:ee:dd:cc:bb:aa");
+		pkt.setEtherType((short)35020);
+		pkt.setVlanID(vlanId);
+		pkt.setPad(true);
+		return pkt.serialize();
+	}
+	
+	@Test
+	public void testTagged(){
+		byte[] data = this.buildPacket((short)100);
+		assertEquals("vlan 100 read from packet", 100, PacketHeader.getVlanId(data));
+		data = this.buildPacket((short)4095);
+		assertEquals("vlan 4095 read from packet", 4095, PacketHeader.getVlanId(data));
+	}
+	
+	@Test
+	public void testUntagged(){
+		byte[] data = this.buildPacket(Ethernet.VLAN_UNTAGGED);
+		assertEquals("untagged packet", VLANRange.UNTAGGED, PacketHeader.getVlanId(data));
+	}
+	
+	@Test
+	public void testMatchesLoadFromPacket(){
+		short[] vlans = {1, 100, 1000, 4095, Ethernet.VLAN_UNTAGGED};
+		for(short vlan : vlans){
+			byte[] data = this.buildPacket(vlan);
+			OFMatch match = new OFMatch();
+			match.loadFromPacket(data, (short)1);
+			assertEquals("same vlan as loadFromPacket", match.getDataLayerVirtualLan(), (short)PacketHeader.getVlanId(data));
+		}
+	}
+	
+	@Test
+	public void testMalformed(){
+		assertEquals("null packet", PacketHeader.MALFORMED, PacketHeader.getVlanId(null));
+		assertEquals("empty packet", PacketHeader.MALFORMED, PacketHeader.getVlanId(new byte[0]));
+		byte[] data = this.buildPacket((short)100);
+		assertEquals("truncated tag", PacketHeader.MALFORMED, PacketHeader.getVlanId(Arrays.copyOf(data, 16)));
+		assertEquals("truncated ethernet header", PacketHeader.MALFORMED, PacketHeader.getVlanId(Arrays.copyOf(data, 13)));
+	}
+	
+	@Test
+	public void testStripVlan(){
+		short[] vlans = {1, 100, 4095};
+		for(short vlan : vlans){
+			byte[] data = this.buildPacket(vlan);
+			//what the old managed tag path produced
+			Ethernet pkt = new Ethernet();
+			pkt.deserialize(data, 0, data.length);
+			pkt.setVlanID(Ethernet.VLAN_UNTAGGED);
+			byte[] expected = pkt.serialize();
+			
+			byte[] stripped = PacketHeader.stripVlan(data);
+			assertTrue("same bytes as deserialize/serialize", Arrays.equals(expected, stripped));
+			assertEquals("stripped packet is untagged", VLANRange.UNTAGGED, PacketHeader.getVlanId(stripped));
+			assertEquals("tag removed", data.length - PacketHeader.VLAN_TAG_LENGTH, stripped.length);
+		}
+		
+		byte[] untagged = this.buildPacket(Ethernet.VLAN_UNTAGGED);
+		assertSame("untagged packet unchanged", untagged, PacketHeader.stripVlan(untagged));
+		byte[] truncated = Arrays.copyOf(this.buildPacket((short)100), 16);
+		assertSame("truncated packet unchanged", truncated, PacketHeader.stripVlan(truncated));
+		assertNull("null packet", PacketHeader.stripVlan(null));
+	}
+	
+	@Test
+	public void testPushVlan(){
+		byte[] data = this.buildPacket(Ethernet.VLAN_UNTAGGED);
+		short[] vlans = {1, 100, 4095};
+		for(short vlan : vlans){
+			//what the old managed tag path produced
+			Ethernet pkt = new Ethernet();
+			pkt.deserialize(data, 0, data.length);
+			pkt.setVlanID(vlan);
+			byte[] expected = pkt.serialize();
+			
+			byte[] tagged = PacketHeader.pushVlan(data, vlan);
+			assertTrue("same bytes as deserialize/serialize", Arrays.equals(expected, tagged));
+			assertEquals("tagged packet has the vlan", vlan, PacketHeader.getVlanId(tagged));
+			assertTrue("strip undoes push", Arrays.equals(data, PacketHeader.stripVlan(tagged)));
+		}
+		assertSame("untagged vlan leaves the packet alone", data, PacketHeader.pushVlan(data, VLANRange.UNTAGGED));
+	}
+}
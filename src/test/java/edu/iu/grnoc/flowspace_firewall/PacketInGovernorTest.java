@@ -0,0 +1,97 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.iu.grnoc.flowspace_firewall.PacketInGovernor.State;
+import edu.iu.grnoc.flowspace_firewall.PacketInGovernor.Verdict;
+
+public class PacketInGovernorTest {
+
+	private byte[] packet(int flow){
+		byte[] data = new byte[60];
+		data[5] = (byte)flow;
+		data[12] = 0x08;
+		return data;
+	}
+
+	@Test
+	public void testDropsOverTheLimit(){
+		PacketInGovernor governor = new PacketInGovernor(new RateTracker(5, 1), 10, 60000, 60000);
+		for(int i = 0; i < 5; i++){
+			assertEquals(Verdict.FORWARD, governor.check((short)1, packet(1)));
+		}
+		assertEquals(State.NORMAL, governor.getState());
+		for(int i = 0; i < 20; i++){
+			assertEquals("excess dropped, slice stays up", Verdict.DROP, governor.check((short)1, packet(1)));
+		}
+		assertEquals(State.DROPPING, governor.getState());
+		assertEquals(20, governor.getDropped());
+		assertEquals(0, governor.getSampled());
+	}
+
+	@Test
+	public void testSamplesPerFlow(){
+		RateTracker limiter = new RateTracker(1, 1000);
+		PacketInGovernor governor = new PacketInGovernor(limiter, 4, 0, 60000);
+		assertEquals(Verdict.FORWARD, governor.check((short)1, packet(1)));
+		assertEquals(Verdict.DROP, governor.check((short)1, packet(1)));
+		assertEquals("sampling right away", State.SAMPLING, governor.getState());
+		//plenty of tokens for the samples
+		limiter.setBurst(1000);
+
+		int forwarded1 = 0;
+		int forwarded2 = 0;
+		for(int i = 0; i < 40; i++){
+			if(governor.check((short)1, packet(1)) == Verdict.FORWARD){
+				forwarded1++;
+			}
+			if(governor.check((short)2, packet(2)) == Verdict.FORWARD){
+				forwarded2++;
+			}
+		}
+		assertEquals("1 in 4 of flow 1", 10, forwarded1);
+		assertEquals("1 in 4 of flow 2", 10, forwarded2);
+		assertEquals(20, governor.getSampled());
+		assertEquals(1 + 60, governor.getDropped());
+	}
+
+	@Test
+	public void testDisableWhenSustained() throws InterruptedException{
+		PacketInGovernor governor = new PacketInGovernor(new RateTracker(1, 1), 10, 60000, 100);
+		assertEquals(Verdict.FORWARD, governor.check((short)1, packet(1)));
+		assertEquals(Verdict.DROP, governor.check((short)1, packet(1)));
+		Thread.sleep(60);
+		assertEquals("not sustained long enough yet", Verdict.DROP, governor.check((short)1, packet(1)));
+		Thread.sleep(60);
+		assertEquals(Verdict.DISABLE, governor.check((short)1, packet(1)));
+	}
+
+	@Test
+	public void testRecovers() throws InterruptedException{
+		PacketInGovernor governor = new PacketInGovernor(new RateTracker(1, 2), 10, 60000, 60000);
+		assertEquals(Verdict.FORWARD, governor.check((short)1, packet(1)));
+		assertEquals(Verdict.DROP, governor.check((short)1, packet(1)));
+		assertEquals(State.DROPPING, governor.getState());
+		//a quiet second with no more offered than the rate and it is over
+		Thread.sleep(1100);
+		assertEquals(Verdict.FORWARD, governor.check((short)1, packet(1)));
+		assertEquals(State.NORMAL, governor.getState());
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+public class PortConfigIndexTest {
+
+	@Test
+	public void testEmpty(){
+		PortConfigIndex index = new PortConfigIndex();
+		assertEquals("empty index has no ports", 0, index.size());
+		assertNull("nothing found in empty index", index.get((short)1));
+		
+		index = new PortConfigIndex(new HashMap<Short, PortConfig>());
+		assertNull("nothing found in index built from empty map", index.get((short)0));
+	}
+	
+	@Test
+	public void testLookup(){
+		HashMap<Short, PortConfig> ports = new HashMap<Short, PortConfig>();
+		PortConfig pConfig = new PortConfig("foo", new VLANRange());
+		PortConfig pConfig2 = new PortConfig("foo2", new VLANRange());
+		PortConfig pConfig3 = new PortConfig("foo3", new VLANRange());
+		PortConfig pConfig4 = new PortConfig("foo4", new VLANRange());
+		//1, 9 and 17 land in the same slot of an 8 entry table
+		ports.put((short)1, pConfig);
+		ports.put((short)9, pConfig2);
+		ports.put((short)17, pConfig3);
+		ports.put((short)59590, pConfig4);
+		
+		PortConfigIndex index = new PortConfigIndex(ports);
+		assertEquals("index has 4 ports", 4, index.size());
+		assertEquals("port 1 found", pConfig, index.get((short)1));
+		assertEquals("port 9 found", pConfig2, index.get((short)9));
+		assertEquals("port 17 found", pConfig3, index.get((short)17));
+		assertEquals("port 59590 found", pConfig4, index.get((short)59590));
+		assertNull("port 25 not found", index.get((short)25));
+		assertNull("port 2 not found", index.get((short)2));
+		assertNull("OFPP_NONE not found", index.get((short)-1));
+	}
+}
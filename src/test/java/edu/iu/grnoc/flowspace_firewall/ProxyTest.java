@@ -1025,6 +1025,8 @@ public class ProxyTest {
 	@Test
 	public void testPacketINRateLimit(){
 		setupSlicer();
+		//disable once over the rate for half a second
+		slicer.setPacketInDisableAfter(500);
 		messagesSentToSwitch.clear();
 		messagesSentToController.clear();
 		Proxy proxy = new Proxy(sw, slicer, fsfw);
@@ -75,6 +75,58 @@ public class RateLimitTest {
 		assertTrue("Rate Limit: " + tracker.getRate(), tracker.getRate() >= 9);
 	}
 	
+	@Test
+	public void testBurst(){
+		RateTracker tracker = new RateTracker(5,1);
+		assertTrue("Burst is set properly", tracker.getBurst() == 5);
+		for(int i=0;i<5;i++){
+			assertTrue("burst " + i + " allowed", tracker.okToProcess());
+		}
+		assertFalse("bucket is empty", tracker.okToProcess());
+	}
+	
+	@Test
+	public void testDefaultBurst(){
+		//one second worth of the rate
+		RateTracker tracker = new RateTracker(0,3);
+		assertTrue("Burst follows the rate", tracker.getBurst() == 3);
+		for(int i=0;i<3;i++){
+			assertTrue(tracker.okToProcess());
+		}
+		assertFalse(tracker.okToProcess());
+		tracker.setRate(6);
+		assertTrue("Burst follows the rate", tracker.getBurst() == 6);
+	}
 	
+	@Test
+	public void testRefill() throws InterruptedException{
+		RateTracker tracker = new RateTracker(1,20);
+		assertTrue(tracker.okToProcess());
+		assertFalse(tracker.okToProcess());
+		//a token every 50ms
+		Thread.sleep(60);
+		assertTrue(tracker.okToProcess());
+		assertFalse(tracker.okToProcess());
+	}
+	
+	@Test
+	public void testZeroRate(){
+		RateTracker tracker = new RateTracker(10,0);
+		assertFalse("nothing allowed", tracker.okToProcess());
+		tracker.setRate(10);
+		assertTrue(tracker.okToProcess());
+	}
+	
+	@Test
+	public void testRateDecays() throws InterruptedException{
+		RateTracker tracker = new RateTracker(1000,1000);
+		for(int i=0;i<100;i++){
+			assertTrue(tracker.okToProcess());
+		}
+		double rate = tracker.getRate();
+		assertTrue("Rate: " + rate, rate > 0);
+		Thread.sleep(100);
+		assertTrue("rate decays without events", tracker.getRate() < rate);
+	}
 	
 }
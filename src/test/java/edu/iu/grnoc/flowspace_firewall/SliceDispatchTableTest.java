@@ -0,0 +1,149 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.ImmutablePort;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SliceDispatchTableTest {
+
+	IOFSwitch sw;
+	Proxy proxy;
+	Proxy proxy2;
+	List<Proxy> proxies;
+	
+	private VLANSlicer buildSlicer(String name, short[] vlans){
+		VLANSlicer slicer = new VLANSlicer();
+		slicer.setSliceName(name);
+		String[] ports = {"foo", "foo2", "foo6"};
+		for(String port : ports){
+			PortConfig pConfig = new PortConfig();
+			pConfig.setPortName(port);
+			VLANRange range = new VLANRange();
+			for(short vlan : vlans){
+				range.setVlanAvail(vlan, true);
+			}
+			pConfig.setVLANRange(range);
+			slicer.setPortConfig(port, pConfig);
+		}
+		return slicer;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setup(){
+		ArrayList <ImmutablePort> ports = new ArrayList <ImmutablePort>();
+		
+		ImmutablePort p = createMock(ImmutablePort.class);
+		expect(p.getName()).andReturn("foo").anyTimes();
+		expect(p.getPortNumber()).andReturn((short)1).anyTimes();
+		EasyMock.replay(p);
+		ports.add(p);
+		
+		ImmutablePort p2 = createMock(ImmutablePort.class);
+		expect(p2.getName()).andReturn("foo2").anyTimes();
+		expect(p2.getPortNumber()).andReturn((short)2).anyTimes();
+		EasyMock.replay(p2);
+		ports.add(p2);
+		
+		ImmutablePort p4 = createMock(ImmutablePort.class);
+		expect(p4.getName()).andReturn("foo4").anyTimes();
+		expect(p4.getPortNumber()).andReturn((short)4).anyTimes();
+		EasyMock.replay(p4);
+		ports.add(p4);
+		
+		ImmutablePort p6 = createMock(ImmutablePort.class);
+		expect(p6.getName()).andReturn("foo6").anyTimes();
+		expect(p6.getPortNumber()).andReturn((short)59590).anyTimes();
+		EasyMock.replay(p6);
+		ports.add(p6);
+		
+		sw = EasyMock.createNiceMock(IOFSwitch.class);
+		expect(sw.getId()).andReturn(0L).anyTimes();
+		expect(sw.getPorts()).andReturn((Collection <ImmutablePort>) ports).anyTimes();
+		expect(sw.getStringId()).andReturn("FF:FF:FF:FF:FF:FF").anyTimes();
+		EasyMock.replay(sw);
+		
+		proxy = new Proxy(sw, this.buildSlicer("slice1", new short[]{100, 101, VLANRange.UNTAGGED}), null);
+		proxy2 = new Proxy(sw, this.buildSlicer("slice2", new short[]{200, 4095}), null);
+		proxies = new ArrayList<Proxy>();
+		proxies.add(proxy);
+		proxies.add(proxy2);
+	}
+	
+	@Test
+	public void testOwners(){
+		SliceDispatchTable table = new SliceDispatchTable(proxies);
+		
+		assertEquals("port 1 vlan 100 owned by one slice", 1, table.getOwners((short)1, 100).size());
+		assertEquals("port 1 vlan 100 owned by slice1", proxy, table.getOwners((short)1, 100).get(0));
+		assertEquals("port 2 vlan 101 owned by slice1", proxy, table.getOwners((short)2, 101).get(0));
+		assertEquals("port 59590 untagged owned by slice1", proxy, table.getOwners((short)59590, VLANRange.UNTAGGED).get(0));
+		assertEquals("port 2 vlan 200 owned by slice2", proxy2, table.getOwners((short)2, 200).get(0));
+		assertEquals("port 1 vlan 4095 owned by slice2", proxy2, table.getOwners((short)1, 4095).get(0));
+	}
+	
+	@Test
+	public void testNoOwner(){
+		SliceDispatchTable table = new SliceDispatchTable(proxies);
+		
+		assertTrue("vlan 300 is not owned", table.getOwners((short)1, 300).isEmpty());
+		assertTrue("port 4 is not part of any slice", table.getOwners((short)4, 100).isEmpty());
+		assertTrue("port 100 does not exist", table.getOwners((short)100, 100).isEmpty());
+		assertTrue("vlan 0 is never owned", table.getOwners((short)1, 0).isEmpty());
+		assertTrue("out of range vlan is never owned", table.getOwners((short)1, 5000).isEmpty());
+		
+		table = new SliceDispatchTable(new ArrayList<Proxy>());
+		assertTrue("empty table owns nothing", table.getOwners((short)1, 100).isEmpty());
+	}
+	
+	@Test
+	public void testSharedOwner(){
+		Proxy proxy3 = new Proxy(sw, this.buildSlicer("slice3", new short[]{100}), null);
+		proxies.add(proxy3);
+		SliceDispatchTable table = new SliceDispatchTable(proxies);
+		
+		List<Proxy> owners = table.getOwners((short)1, 100);
+		assertEquals("overlapping slices both get the packet", 2, owners.size());
+		assertTrue("slice1 gets the packet", owners.contains(proxy));
+		assertTrue("slice3 gets the packet", owners.contains(proxy3));
+		assertEquals("vlan 101 still owned by just slice1", 1, table.getOwners((short)1, 101).size());
+	}
+	
+	@Test
+	public void testPortChange(){
+		SliceDispatchTable table = new SliceDispatchTable(proxies);
+		assertFalse("port 1 vlan 100 owned", table.getOwners((short)1, 100).isEmpty());
+		
+		proxy.getSlicer().removePortId("foo");
+		proxy2.getSlicer().removePortId("foo");
+		table = new SliceDispatchTable(proxies);
+		assertTrue("port 1 vlan 100 no longer owned", table.getOwners((short)1, 100).isEmpty());
+		assertFalse("port 2 vlan 100 still owned", table.getOwners((short)2, 100).isEmpty());
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.floodlightcontroller.core.IOFSwitch;
+
+import org.easymock.EasyMock;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFBarrierRequest;
+import org.openflow.protocol.OFEchoRequest;
+import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFType;
+
+public class SwitchBackpressureTest {
+
+	IOFSwitch sw;
+	int nextXid;
+
+	@Before
+	public void setup(){
+		nextXid = 100;
+		sw = EasyMock.createNiceMock(IOFSwitch.class);
+		EasyMock.expect(sw.getNextTransactionId()).andAnswer(new org.easymock.IAnswer<Integer>() {
+			public Integer answer() {
+				return nextXid++;
+			}
+		}).anyTimes();
+		EasyMock.replay(sw);
+	}
+
+	private List<OFMessage> batch(int count){
+		List<OFMessage> msgs = new ArrayList<OFMessage>();
+		for(int i = 0; i < count; i++){
+			msgs.add(new OFEchoRequest());
+		}
+		return msgs;
+	}
+
+	@Test
+	public void testBarrierInterval(){
+		//barrier every 4 messages, never pauses
+		SwitchBackpressure bp = new SwitchBackpressure(sw, 1000, 500, 4 * OFMessage.MINIMUM_LENGTH);
+		List<OFMessage> msgs = batch(3);
+		bp.beforeWrite(msgs, 3 * OFMessage.MINIMUM_LENGTH);
+		assertEquals("no barrier yet", 3, msgs.size());
+		msgs = batch(1);
+		bp.beforeWrite(msgs, OFMessage.MINIMUM_LENGTH);
+		assertEquals(2, msgs.size());
+		assertEquals(OFType.BARRIER_REQUEST, msgs.get(1).getType());
+		assertEquals(100, msgs.get(1).getXid());
+		assertEquals(4 * OFMessage.MINIMUM_LENGTH, bp.getUnackedBytes());
+
+		assertFalse("not ours", bp.barrierReply(5));
+		assertTrue(bp.barrierReply(100));
+		assertEquals(0, bp.getUnackedBytes());
+		assertFalse("only answered once", bp.barrierReply(100));
+	}
+
+	@Test
+	public void testPauseAndResume(){
+		Channel controller1 = EasyMock.createMock(Channel.class);
+		Channel controller2 = EasyMock.createMock(Channel.class);
+		Channel controller3 = EasyMock.createMock(Channel.class);
+		EasyMock.expect(controller1.setReadable(false)).andReturn(null).once();
+		EasyMock.expect(controller1.setReadable(true)).andReturn(null).once();
+		EasyMock.expect(controller2.setReadable(false)).andReturn(null).once();
+		EasyMock.expect(controller2.setReadable(true)).andReturn(null).once();
+		//added while paused
+		EasyMock.expect(controller3.setReadable(false)).andReturn(null).once();
+		EasyMock.expect(controller3.setReadable(true)).andReturn(null).once();
+		EasyMock.replay(controller1, controller2, controller3);
+
+		SwitchBackpressure bp = new SwitchBackpressure(sw, 10 * OFMessage.MINIMUM_LENGTH, 2 * OFMessage.MINIMUM_LENGTH, 1000);
+		bp.addReader(controller1);
+		bp.addReader(controller2);
+
+		List<OFMessage> first = batch(6);
+		bp.beforeWrite(first, 6 * OFMessage.MINIMUM_LENGTH);
+		assertEquals(6, first.size());
+		assertFalse(bp.isPaused());
+
+		List<OFMessage> second = batch(5);
+		bp.beforeWrite(second, 5 * OFMessage.MINIMUM_LENGTH);
+		assertTrue(bp.isPaused());
+		assertEquals(1, bp.getPauseCount());
+		assertTrue("pausing always ends with a barrier", second.get(5) instanceof OFBarrierRequest);
+		bp.addReader(controller3);
+
+		//still paused while more than the low watermark is unanswered
+		List<OFMessage> third = batch(3);
+		bp.beforeWrite(third, 3 * OFMessage.MINIMUM_LENGTH);
+		assertTrue(third.get(3) instanceof OFBarrierRequest);
+		assertTrue(bp.barrierReply(second.get(5).getXid()));
+		assertEquals(3 * OFMessage.MINIMUM_LENGTH, bp.getUnackedBytes());
+		assertTrue(bp.isPaused());
+
+		assertTrue(bp.barrierReply(third.get(3).getXid()));
+		assertFalse(bp.isPaused());
+		assertEquals(0, bp.getUnackedBytes());
+		EasyMock.verify(controller1, controller2, controller3);
+	}
+
+	@Test
+	public void testLaterBarrierAnswersEarlier(){
+		SwitchBackpressure bp = new SwitchBackpressure(sw, 1000, 500, OFMessage.MINIMUM_LENGTH);
+		List<OFMessage> first = batch(1);
+		bp.beforeWrite(first, OFMessage.MINIMUM_LENGTH);
+		List<OFMessage> second = batch(1);
+		bp.beforeWrite(second, OFMessage.MINIMUM_LENGTH);
+		assertTrue(bp.barrierReply(second.get(1).getXid()));
+		assertEquals(0, bp.getUnackedBytes());
+		assertFalse("dropped with the later barrier", bp.barrierReply(first.get(1).getXid()));
+	}
+
+	private Channel pausedOnceChannel(){
+		Channel controller = EasyMock.createMock(Channel.class);
+		EasyMock.expect(controller.setReadable(false)).andReturn(null).once();
+		EasyMock.expect(controller.setReadable(true)).andReturn(null).once();
+		EasyMock.replay(controller);
+		return controller;
+	}
+
+	private List<OFMessage> pause(SwitchBackpressure bp){
+		List<OFMessage> msgs = batch(11);
+		bp.beforeWrite(msgs, 11 * OFMessage.MINIMUM_LENGTH);
+		assertTrue(bp.isPaused());
+		return msgs;
+	}
+
+	@Test
+	public void testLostBarrierReplyResumes() throws InterruptedException{
+		Channel controller = pausedOnceChannel();
+		SwitchBackpressure bp = new SwitchBackpressure(sw, 10 * OFMessage.MINIMUM_LENGTH, 2 * OFMessage.MINIMUM_LENGTH, 1000, 100);
+		bp.addReader(controller);
+		List<OFMessage> msgs = pause(bp);
+		//the reply to the barrier never comes
+		for(int i = 0; i < 100 && bp.isPaused(); i++){
+			Thread.sleep(10);
+		}
+		assertFalse("resumed after the pause timeout", bp.isPaused());
+		assertEquals(1, bp.getStallCount());
+		assertEquals(0, bp.getUnackedBytes());
+		assertFalse("the barrier was given up on", bp.barrierReply(msgs.get(11).getXid()));
+		EasyMock.verify(controller);
+
+		//flow control still works after a stall
+		bp.removeReader(controller);
+		pause(bp);
+		assertEquals(2, bp.getPauseCount());
+	}
+
+	@Test
+	public void testBarrierErrorResumes(){
+		Channel controller = pausedOnceChannel();
+		SwitchBackpressure bp = new SwitchBackpressure(sw, 10 * OFMessage.MINIMUM_LENGTH, 2 * OFMessage.MINIMUM_LENGTH, 1000);
+		bp.addReader(controller);
+		List<OFMessage> msgs = pause(bp);
+		assertFalse("not ours", bp.barrierError(5));
+		assertTrue(bp.isPaused());
+		assertTrue(bp.barrierError(msgs.get(11).getXid()));
+		assertFalse(bp.isPaused());
+		assertEquals(0, bp.getStallCount());
+		EasyMock.verify(controller);
+	}
+
+	@Test
+	public void testResetResumes(){
+		Channel controller = pausedOnceChannel();
+		SwitchBackpressure bp = new SwitchBackpressure(sw, 10 * OFMessage.MINIMUM_LENGTH, 2 * OFMessage.MINIMUM_LENGTH, 1000);
+		bp.addReader(controller);
+		List<OFMessage> msgs = pause(bp);
+		bp.reset();
+		assertFalse(bp.isPaused());
+		assertEquals(0, bp.getUnackedBytes());
+		assertFalse("barriers of the old connection are forgotten", bp.barrierReply(msgs.get(11).getXid()));
+		EasyMock.verify(controller);
+	}
+
+	@Test
+	public void testReplyWhilePausing() throws InterruptedException{
+		final AtomicBoolean readable = new AtomicBoolean(true);
+		final CountDownLatch pausing = new CountDownLatch(1);
+		final CountDownLatch replied = new CountDownLatch(1);
+		Channel controller = EasyMock.createNiceMock(Channel.class);
+		EasyMock.expect(controller.setReadable(EasyMock.anyBoolean())).andAnswer(new org.easymock.IAnswer<ChannelFuture>() {
+			public ChannelFuture answer() throws InterruptedException {
+				boolean value = (Boolean)EasyMock.getCurrentArguments()[0];
+				if(!value){
+					//give the barrier reply a chance to run in the middle of pausing
+					pausing.countDown();
+					replied.await(500, TimeUnit.MILLISECONDS);
+				}
+				readable.set(value);
+				return null;
+			}
+		}).anyTimes();
+		//mocks serialize their calls by default which would hide the race
+		EasyMock.makeThreadSafe(controller, false);
+		EasyMock.replay(controller);
+
+		final SwitchBackpressure bp = new SwitchBackpressure(sw, 10 * OFMessage.MINIMUM_LENGTH, 2 * OFMessage.MINIMUM_LENGTH, 1000, 60000);
+		bp.addReader(controller);
+		final List<OFMessage> msgs = batch(11);
+		Thread writer = new Thread(){
+			public void run(){
+				bp.beforeWrite(msgs, 11 * OFMessage.MINIMUM_LENGTH);
+			}
+		};
+		writer.start();
+		assertTrue(pausing.await(5, TimeUnit.SECONDS));
+		//the barrier written with the pausing batch is the first xid
+		assertTrue(bp.barrierReply(100));
+		replied.countDown();
+		writer.join(5000);
+		assertFalse(writer.isAlive());
+
+		assertEquals(0, bp.getUnackedBytes());
+		assertFalse(bp.isPaused());
+		assertTrue("channel readability matches the pause state", readable.get());
+	}
+}
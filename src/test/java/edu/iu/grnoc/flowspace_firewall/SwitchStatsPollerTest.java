@@ -0,0 +1,128 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import net.floodlightcontroller.core.IOFSwitch;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iu.grnoc.flowspace_firewall.SwitchStatsPoller.PollResult;
+
+public class SwitchStatsPollerTest {
+
+	ScheduledThreadPoolExecutor executor;
+	FlowStatCacher cacher;
+	IOFSwitch fastSwitch;
+	IOFSwitch slowSwitch;
+
+	@Before
+	public void setup(){
+		executor = new ScheduledThreadPoolExecutor(2);
+		fastSwitch = EasyMock.createNiceMock(IOFSwitch.class);
+		EasyMock.expect(fastSwitch.getStringId()).andReturn("00:00:00:00:00:00:00:01").anyTimes();
+		slowSwitch = EasyMock.createNiceMock(IOFSwitch.class);
+		EasyMock.expect(slowSwitch.getStringId()).andReturn("00:00:00:00:00:00:00:02").anyTimes();
+		EasyMock.replay(fastSwitch, slowSwitch);
+
+		//the slow switch takes a second to answer
+		cacher = EasyMock.createMock(FlowStatCacher.class);
+		EasyMock.expect(cacher.pollSwitch(fastSwitch)).andAnswer(sleep(10)).anyTimes();
+		EasyMock.expect(cacher.pollSwitch(slowSwitch)).andAnswer(sleep(1000)).anyTimes();
+		//mocks are thread safe by taking a lock on every call
+		EasyMock.makeThreadSafe(cacher, false);
+		EasyMock.replay(cacher);
+	}
+
+	@After
+	public void tearDown(){
+		executor.shutdownNow();
+	}
+
+	private IAnswer<PollResult> sleep(final long millis){
+		return new IAnswer<PollResult>(){
+			public PollResult answer() throws InterruptedException{
+				Thread.sleep(millis);
+				return new PollResult(10, 1, false);
+			}
+		};
+	}
+
+	@Test
+	public void testPollsEveryInterval() throws InterruptedException{
+		SwitchStatsPoller poller = new SwitchStatsPoller(fastSwitch, cacher, executor, 100);
+		assertEquals(0, poller.getPollCount());
+		assertEquals(0, poller.getLastPollTime());
+		poller.start();
+		Thread.sleep(550);
+		long polls = poller.getPollCount();
+		assertTrue("polled every 100ms: " + polls, polls >= 4 && polls <= 7);
+		assertTrue("poll time is measured", poller.getLastPollMillis() >= 10);
+		assertTrue(poller.getMaxPollMillis() >= poller.getLastPollMillis());
+		assertTrue(poller.getMeanPollMillis() >= 10);
+		assertTrue(poller.getLastPollTime() > 0);
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException{
+		SwitchStatsPoller poller = new SwitchStatsPoller(fastSwitch, cacher, executor, 50);
+		poller.start();
+		Thread.sleep(200);
+		poller.cancel();
+		assertTrue(poller.isCancelled());
+		Thread.sleep(30);
+		long polls = poller.getPollCount();
+		Thread.sleep(200);
+		assertEquals("no polls after cancel", polls, poller.getPollCount());
+	}
+
+	@Test
+	public void testSlowSwitchDoesNotDelayOthers() throws InterruptedException{
+		SwitchStatsPoller slow = new SwitchStatsPoller(slowSwitch, cacher, executor, 100);
+		SwitchStatsPoller fast = new SwitchStatsPoller(fastSwitch, cacher, executor, 100);
+		slow.start();
+		fast.start();
+		Thread.sleep(1100);
+		assertEquals("slow switch polled once", 1, slow.getPollCount());
+		assertTrue("slow switch poll time", slow.getLastPollMillis() >= 1000);
+		assertTrue("fast switch kept its interval: " + fast.getPollCount(), fast.getPollCount() >= 8);
+		slow.cancel();
+		fast.cancel();
+	}
+
+	@Test
+	public void testAdaptiveInterval(){
+		SwitchStatsPoller poller = new SwitchStatsPoller(fastSwitch, cacher, executor, 1000, 8000);
+		assertEquals("starts at the default interval", 8000, poller.getIntervalMillis());
+		assertEquals("busy table is polled more", 2000, poller.nextInterval(4000, 10, new PollResult(100, 50, false)));
+		assertEquals("quiet table is polled less", 6000, poller.nextInterval(4000, 10, new PollResult(100, 0, false)));
+		assertEquals("some churn keeps the interval", 4000, poller.nextInterval(4000, 10, new PollResult(100, 5, false)));
+		assertEquals("nothing to compare the first poll with", 4000, poller.nextInterval(4000, 10, new PollResult(100, -1, false)));
+		assertEquals("back off when the switch fails", 8000, poller.nextInterval(4000, 10, new PollResult(0, -1, true)));
+		assertEquals("back off when the poll throws", 8000, poller.nextInterval(4000, 10, null));
+		assertEquals("never over the max", 8000, poller.nextInterval(8000, 10, new PollResult(100, 0, false)));
+		assertEquals("never under the min", 1000, poller.nextInterval(1000, 10, new PollResult(100, 50, false)));
+		assertEquals("slow replies stretch the interval", 5000, poller.nextInterval(1000, 500, new PollResult(100, 50, false)));
+		assertEquals("a large table needs more flows to change to be busy", 4000, poller.nextInterval(4000, 10, new PollResult(30000, 50, false)));
+	}
+}
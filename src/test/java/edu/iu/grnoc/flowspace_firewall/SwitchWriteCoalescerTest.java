@@ -0,0 +1,210 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IOFSwitch;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFBarrierRequest;
+import org.openflow.protocol.OFMessage;
+
+public class SwitchWriteCoalescerTest {
+
+	IOFSwitch sw;
+	//one entry per write to the switch
+	List<List<OFMessage>> writes;
+	int flushes;
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setup() throws Exception{
+		writes = new ArrayList<List<OFMessage>>();
+		flushes = 0;
+		sw = EasyMock.createNiceMock(IOFSwitch.class);
+		sw.write(EasyMock.isA(List.class), EasyMock.isNull(net.floodlightcontroller.core.FloodlightContext.class));
+		EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+			public Object answer() {
+				writes.add(new ArrayList<OFMessage>((List<OFMessage>)EasyMock.getCurrentArguments()[0]));
+				return null;
+			}
+		}).anyTimes();
+		sw.flush();
+		EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+			public Object answer() {
+				flushes++;
+				return null;
+			}
+		}).anyTimes();
+		EasyMock.replay(sw);
+	}
+
+	private List<OFMessage> barriers(int count){
+		List<OFMessage> msgs = new ArrayList<OFMessage>();
+		for(int i = 0; i < count; i++){
+			OFBarrierRequest barrier = new OFBarrierRequest();
+			barrier.setXid(i);
+			msgs.add(barrier);
+		}
+		return msgs;
+	}
+
+	@Test
+	public void testWriteOutsideTrain(){
+		SwitchWriteCoalescer writer = new SwitchWriteCoalescer(sw);
+		assertFalse(WriteTrain.inTrain());
+		writer.write(barriers(2));
+		writer.write(barriers(1).get(0));
+		assertEquals("every write is flushed right away", 2, writes.size());
+		assertEquals(2, writes.get(0).size());
+		assertEquals(1, writes.get(1).size());
+		assertEquals(2, flushes);
+		assertEquals(2, writer.getBatchCount());
+		assertEquals(3, writer.getMessageCount());
+		assertEquals(2, writer.getMaxBatch());
+		assertEquals(0, writer.getPendingBytes());
+	}
+
+	@Test
+	public void testTrainFlushesOnce(){
+		SwitchWriteCoalescer writer = new SwitchWriteCoalescer(sw, 32768, 1000000);
+		SwitchWriteCoalescer other = new SwitchWriteCoalescer(sw, 32768, 1000000);
+		List<OFMessage> msgs = barriers(5);
+		WriteTrain.begin();
+		writer.write(msgs.get(0));
+		writer.write(msgs.subList(1, 3));
+		other.write(msgs.get(3));
+		//nested trains only flush at the outermost end
+		WriteTrain.begin();
+		writer.write(msgs.get(4));
+		WriteTrain.end();
+		assertEquals(0, writes.size());
+		assertEquals(4 * OFMessage.MINIMUM_LENGTH, writer.getPendingBytes());
+		WriteTrain.end();
+		assertFalse(WriteTrain.inTrain());
+
+		assertEquals(2, writes.size());
+		assertEquals(2, flushes);
+		List<OFMessage> expected = new ArrayList<OFMessage>(msgs.subList(0, 3));
+		expected.add(msgs.get(4));
+		assertEquals("order is kept", expected, writes.get(0));
+		assertEquals(msgs.subList(3, 4), writes.get(1));
+		assertEquals(1, writer.getBatchCount());
+		assertEquals(4, writer.getMaxBatch());
+		assertEquals(4 * OFMessage.MINIMUM_LENGTH, writer.getByteCount());
+		assertEquals(4.0, writer.getMeanBatch(), 0.001);
+	}
+
+	@Test
+	public void testByteThreshold(){
+		//flush once 3 barriers are queued
+		SwitchWriteCoalescer writer = new SwitchWriteCoalescer(sw, 3 * OFMessage.MINIMUM_LENGTH, 1000000);
+		WriteTrain.begin();
+		try{
+			writer.write(barriers(2));
+			assertEquals(0, writes.size());
+			writer.write(barriers(2));
+			assertEquals(1, writes.size());
+			assertEquals(4, writes.get(0).size());
+			writer.write(barriers(1));
+			assertEquals(1, writes.size());
+		}finally{
+			WriteTrain.end();
+		}
+		assertEquals(2, writes.size());
+		assertEquals(1, writes.get(1).size());
+	}
+
+	@Test
+	public void testDelayThreshold() throws Exception{
+		SwitchWriteCoalescer writer = new SwitchWriteCoalescer(sw, 32768, 1000);
+		assertEquals(1000, writer.getMaxDelayMicros());
+		WriteTrain.begin();
+		try{
+			writer.write(barriers(1));
+			assertEquals(0, writes.size());
+			Thread.sleep(5);
+			writer.write(barriers(1));
+			assertEquals("oldest message waited past the delay", 1, writes.size());
+			assertEquals(2, writes.get(0).size());
+		}finally{
+			WriteTrain.end();
+		}
+		assertEquals(1, writes.size());
+	}
+
+	@Test
+	public void testGetInstance(){
+		IOFSwitch sw2 = EasyMock.createMock(IOFSwitch.class);
+		SwitchWriteCoalescer writer = new SwitchWriteCoalescer(sw2);
+		//checked again under the lock before creating it
+		EasyMock.expect(sw2.getAttribute(SwitchWriteCoalescer.SWITCH_ATTRIBUTE)).andReturn(null).times(2);
+		sw2.setAttribute(EasyMock.eq(SwitchWriteCoalescer.SWITCH_ATTRIBUTE), EasyMock.isA(SwitchWriteCoalescer.class));
+		EasyMock.expectLastCall().once();
+		EasyMock.expect(sw2.getAttribute(SwitchWriteCoalescer.SWITCH_ATTRIBUTE)).andReturn(writer).once();
+		EasyMock.replay(sw2);
+		SwitchWriteCoalescer created = SwitchWriteCoalescer.getInstance(sw2);
+		assertNotNull(created);
+		assertNotSame(writer, created);
+		assertSame("shared once stored on the switch", writer, SwitchWriteCoalescer.getInstance(sw2));
+		EasyMock.verify(sw2);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testContextIsKept() throws Exception{
+		final List<FloodlightContext> contexts = new ArrayList<FloodlightContext>();
+		IOFSwitch sw2 = EasyMock.createNiceMock(IOFSwitch.class);
+		sw2.write(EasyMock.isA(List.class), EasyMock.<FloodlightContext>anyObject());
+		EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+			public Object answer() {
+				writes.add(new ArrayList<OFMessage>((List<OFMessage>)EasyMock.getCurrentArguments()[0]));
+				contexts.add((FloodlightContext)EasyMock.getCurrentArguments()[1]);
+				return null;
+			}
+		}).anyTimes();
+		EasyMock.replay(sw2);
+
+		FloodlightContext first = new FloodlightContext();
+		FloodlightContext second = new FloodlightContext();
+		SwitchWriteCoalescer writer = new SwitchWriteCoalescer(sw2, 32768, 1000000);
+		List<OFMessage> msgs = barriers(5);
+		WriteTrain.begin();
+		writer.write(msgs.subList(0, 2), first);
+		writer.write(msgs.get(2), first);
+		writer.write(msgs.get(3), second);
+		writer.write(msgs.get(4));
+		WriteTrain.end();
+
+		assertEquals("one write per run of the same context", 3, writes.size());
+		assertEquals(msgs.subList(0, 3), writes.get(0));
+		assertSame(first, contexts.get(0));
+		assertEquals(msgs.subList(3, 4), writes.get(1));
+		assertSame(second, contexts.get(1));
+		assertEquals(msgs.subList(4, 5), writes.get(2));
+		assertNull(contexts.get(2));
+		assertEquals("still one batch", 1, writer.getBatchCount());
+		assertEquals(5, writer.getMaxBatch());
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ Copyright 2014 Trustees of Indiana University
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package edu.iu.grnoc.flowspace_firewall;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.openflow.protocol.action.OFAction;
+import org.openflow.protocol.action.OFActionDataLayerDestination;
+import org.openflow.protocol.action.OFActionOutput;
+import org.openflow.protocol.action.OFActionStripVirtualLan;
+import org.openflow.protocol.action.OFActionType;
+import org.openflow.protocol.action.OFActionVirtualLanIdentifier;
+
+public class TagActionCompactorTest {
+
+	private OFAction setVlan(int vlan){
+		OFActionVirtualLanIdentifier act = new OFActionVirtualLanIdentifier();
+		act.setVirtualLanIdentifier((short)vlan);
+		return act;
+	}
+	
+	private OFAction output(int port){
+		OFActionOutput act = new OFActionOutput();
+		act.setPort((short)port);
+		return act;
+	}
+	
+	//renders the actions as a short string so the expected lists are readable
+	private String render(List<OFAction> actions){
+		StringBuilder sb = new StringBuilder();
+		for(OFAction act : actions){
+			if(sb.length() > 0){
+				sb.append(",");
+			}
+			switch(act.getType()){
+			case SET_VLAN_ID:
+				sb.append("vlan:" + ((OFActionVirtualLanIdentifier)act).getVirtualLanIdentifier());
+				break;
+			case STRIP_VLAN:
+				sb.append("strip");
+				break;
+			case OUTPUT:
+				sb.append("out:" + ((OFActionOutput)act).getPort());
+				break;
+			default:
+				sb.append(act.getType().name());
+				break;
+			}
+		}
+		return sb.toString();
+	}
+	
+	@Test
+	public void testGroupsByTag(){
+		List<OFAction> actions = new ArrayList<OFAction>();
+		actions.add(setVlan(100));
+		actions.add(output(1));
+		actions.add(setVlan(200));
+		actions.add(output(2));
+		actions.add(setVlan(100));
+		actions.add(output(3));
+		actions.add(setVlan(200));
+		actions.add(output(4));
+		List<OFAction> compacted = TagActionCompactor.compact(actions);
+		assertEquals("vlan:100,out:1,out:3,vlan:200,out:2,out:4", render(compacted));
+		assertEquals("length shrinks", TagActionCompactor.getLength(actions) - 2 * OFActionVirtualLanIdentifier.MINIMUM_LENGTH,
+				TagActionCompactor.getLength(compacted));
+	}
+	
+	@Test
+	public void testStripAndOriginalTag(){
+		List<OFAction> actions = new ArrayList<OFAction>();
+		actions.add(output(9));
+		actions.add(new OFActionStripVirtualLan());
+		actions.add(output(1));
+		actions.add(setVlan(100));
+		actions.add(output(2));
+		actions.add(new OFActionStripVirtualLan());
+		actions.add(output(3));
+		actions.add(setVlan(100));
+		actions.add(output(4));
+		//outputs with the incoming tag go first, the last tag set goes last
+		assertEquals("out:9,strip,out:1,out:3,vlan:100,out:2,out:4", render(TagActionCompactor.compact(actions)));
+	}
+	
+	@Test
+	public void testOtherActionsAreBarriers(){
+		List<OFAction> actions = new ArrayList<OFAction>();
+		actions.add(setVlan(100));
+		actions.add(output(1));
+		actions.add(setVlan(200));
+		actions.add(output(2));
+		actions.add(new OFActionDataLayerDestination());
+		actions.add(setVlan(100));
+		actions.add(output(3));
+		actions.add(setVlan(200));
+		actions.add(output(4));
+		actions.add(setVlan(100));
+		actions.add(output(5));
+		List<OFAction> compacted = TagActionCompactor.compact(actions);
+		assertEquals("vlan:100,out:1,vlan:200,out:2,SET_DL_DST,out:4,vlan:100,out:3,out:5", render(compacted));
+		assertEquals("data layer action stays put", OFActionType.SET_DL_DST, compacted.get(4).getType());
+	}
+	
+	@Test
+	public void testNothingToCompact(){
+		List<OFAction> actions = new ArrayList<OFAction>();
+		actions.add(setVlan(100));
+		actions.add(output(1));
+		assertSame("short lists are returned as is", actions, TagActionCompactor.compact(actions));
+		
+		actions.add(setVlan(200));
+		actions.add(output(2));
+		actions.add(output(3));
+		assertEquals("vlan:100,out:1,vlan:200,out:2,out:3", render(TagActionCompactor.compact(actions)));
+		assertNull(TagActionCompactor.compact(null));
+	}
+}
@@ -16,6 +16,9 @@
 package edu.iu.grnoc.flowspace_firewall;
 
 import static org.junit.Assert.*;
+
+import java.util.List;
+
 import org.junit.Rule;
 
 
@@ -79,9 +82,11 @@ public class VLANRangeTest {
 		
 		assertTrue(avail.length == 10);
 		assertTrue(avail[0] == 1);
-		assertTrue(avail[1] == 150);
-		assertTrue(avail[2] == 2);
-		assertTrue(avail[3] == 4);
+		assertTrue(avail[1] == 2);
+		assertTrue(avail[2] == 4);
+		assertTrue(avail[3] == 5);
+		assertTrue(avail[5] == 150);
+		assertTrue(avail[9] == -1);
 	}
 	
 	/**
@@ -257,4 +262,96 @@ public class VLANRangeTest {
 		assertTrue(range.rangeOverlap(range3));
 	}
 	
+	@Test
+	public void testCompareRangesMaxVlan(){
+		VLANRange range = new VLANRange();
+		range.setVlanAvail(VLANRange.MAX_VLAN, true);
+		VLANRange range2 = new VLANRange();
+		range2.setVlanAvail((short)4094, true);
+		assertFalse(range.rangeOverlap(range2));
+		range2.setVlanAvail(VLANRange.MAX_VLAN, true);
+		assertTrue(range.rangeOverlap(range2));
+	}
+	
+	@Test
+	public void testAvailableTagsUpdated(){
+		VLANRange range = new VLANRange();
+		range.setVlanAvail((short)10, true);
+		assertTrue(range.getAvailableTags().length == 1);
+		range.setVlanAvail((short)10, true);
+		range.setVlanAvail((short)64, true);
+		Short[] avail = range.getAvailableTags();
+		assertTrue(avail.length == 2);
+		assertTrue(avail[0] == 10);
+		assertTrue(avail[1] == 64);
+		range.setVlanAvail((short)10, false);
+		avail = range.getAvailableTags();
+		assertTrue(avail.length == 1);
+		assertTrue(avail[0] == 64);
+	}
+	
+	@Test
+	public void testAddRemoveRange(){
+		VLANRange range = new VLANRange();
+		range.addRange((short)1, (short)2000);
+		assertTrue("allowed vlan 1", range.getVlanAvail((short)1));
+		assertTrue("allowed vlan 63", range.getVlanAvail((short)63));
+		assertTrue("allowed vlan 64", range.getVlanAvail((short)64));
+		assertTrue("allowed vlan 2000", range.getVlanAvail((short)2000));
+		assertFalse("not allowed vlan 2001", range.getVlanAvail((short)2001));
+		assertFalse("not allowed untagged", range.getVlanAvail(VLANRange.UNTAGGED));
+		assertTrue(range.getAvailableTags().length == 2000);
+		
+		range.removeRange((short)500, (short)999);
+		assertTrue("allowed vlan 499", range.getVlanAvail((short)499));
+		assertFalse("not allowed vlan 500", range.getVlanAvail((short)500));
+		assertFalse("not allowed vlan 999", range.getVlanAvail((short)999));
+		assertTrue("allowed vlan 1000", range.getVlanAvail((short)1000));
+		assertTrue(range.getAvailableTags().length == 1500);
+		
+		range.addRange(VLANRange.UNTAGGED, VLANRange.UNTAGGED);
+		assertTrue("allowed untagged", range.getVlanAvail(VLANRange.UNTAGGED));
+		
+		assertFalse("wildcard not allowed", range.allowWildcard());
+		range.addRange(VLANRange.MIN_VLAN, VLANRange.MAX_VLAN);
+		assertTrue("wildcard allowed", range.allowWildcard());
+		assertTrue(range.getAvailableTags().length == 4096);
+	}
+	
+	@Test
+	public void testAddRangeOutOfRange() throws IllegalArgumentException{
+		VLANRange range = new VLANRange();
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("VLAN ID 4096 is out of range for valid vlan tags");
+		range.addRange((short)1, (short)4096);
+	}
+	
+	@Test
+	public void testAddRangeMixedUntagged() throws IllegalArgumentException{
+		VLANRange range = new VLANRange();
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("VLAN range -1 to 10 mixes untagged and tagged vlans");
+		range.addRange(VLANRange.UNTAGGED, (short)10);
+	}
+	
+	@Test
+	public void testGetRanges(){
+		VLANRange range = new VLANRange();
+		assertTrue(range.getRanges().isEmpty());
+		range.addRange((short)1, (short)500);
+		range.addRange((short)1000, (short)2000);
+		range.setVlanAvail((short)4095, true);
+		range.setVlanAvail(VLANRange.UNTAGGED, true);
+		List<short[]> ranges = range.getRanges();
+		assertTrue(ranges.size() == 3);
+		assertTrue(ranges.get(0)[0] == 1 && ranges.get(0)[1] == 500);
+		assertTrue(ranges.get(1)[0] == 1000 && ranges.get(1)[1] == 2000);
+		assertTrue(ranges.get(2)[0] == 4095 && ranges.get(2)[1] == 4095);
+		
+		range.addRange(VLANRange.MIN_VLAN, VLANRange.MAX_VLAN);
+		ranges = range.getRanges();
+		assertTrue(ranges.size() == 1);
+		assertTrue(ranges.get(0)[0] == 1 && ranges.get(0)[1] == 4095);
+	}
+	
 }
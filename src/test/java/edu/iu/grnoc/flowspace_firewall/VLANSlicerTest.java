@@ -20,6 +20,8 @@ import static org.easymock.EasyMock.createMock;
 import java.util.Collection;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
 
 import static org.easymock.EasyMock.expect;
 import org.easymock.*;
@@ -221,6 +223,42 @@ public class VLANSlicerTest {
 		
 	}
 	
+	/**
+	 * tests the packet in fast path
+	 */
+	@Test
+	public void testIsPacketInAllowed(){
+		assertTrue("vlan 100 allowed on port 1", slicer.isPacketInAllowed((short)1, (short)100));
+		assertTrue("vlan 1000 allowed on port 2", slicer.isPacketInAllowed((short)2, (short)1000));
+		assertFalse("vlan 101 not allowed on port 1", slicer.isPacketInAllowed((short)1, (short)101));
+		assertFalse("untagged not allowed on port 1", slicer.isPacketInAllowed((short)1, VLANRange.UNTAGGED));
+		assertFalse("port 4 not part of slice", slicer.isPacketInAllowed((short)4, (short)100));
+		assertFalse("port 100 does not exist", slicer.isPacketInAllowed((short)100, (short)100));
+		assertFalse("vlan 0 never allowed", slicer.isPacketInAllowed((short)1, (short)0));
+		
+		pConfig.getVlanRange().setVlanAvail(VLANRange.UNTAGGED, true);
+		assertTrue("untagged allowed on port 1", slicer.isPacketInAllowed((short)1, VLANRange.UNTAGGED));
+	}
+	
+	/**
+	 * tests that port add/delete updates the port id lookups
+	 */
+	@Test
+	public void testPortIdAddDelete(){
+		slicer.removePortId("foo");
+		assertNull("PortConfig for deleted port 1 is null", slicer.getPortConfig((short)1));
+		assertFalse("Deleted port 1 is not part of slice", slicer.isPortPartOfSlice((short)1));
+		assertTrue("Deleted port foo is still configured", slicer.isPortPartOfSlice("foo"));
+		
+		slicer.setPortId("foo", (short)7);
+		assertEquals("PortConfig for foo pulled out by new port id 7", pConfig, slicer.getPortConfig((short)7));
+		assertNull("PortConfig for old port id 1 is still null", slicer.getPortConfig((short)1));
+		assertEquals("PortConfig for foo2 is unchanged", pConfig2, slicer.getPortConfig((short)2));
+		
+		slicer.setPortId("foo4", (short)4);
+		assertNull("Port not part of the slice is not added", slicer.getPortConfig((short)4));
+	}
+	
 	/**
 	 * tests packetOut event slicing
 	 */
@@ -382,6 +420,95 @@ public class VLANSlicerTest {
 		assertEquals("flow was allowed and matches", flow, flows.get(0));
 		
 	}
+	/**
+	 * tests that repeated flow mods use the cached verdict
+	 * and that changing the port config clears it
+	 */
+	@Test
+	public void testFlowVerdictCache(){
+		OFFlowMod flow = new OFFlowMod();
+		OFMatch match = new OFMatch();
+		match.setInputPort((short)1);
+		match.setDataLayerVirtualLan((short)1000);
+		match.setWildcards(match.getWildcardObj().matchOn(Flag.DL_VLAN));
+		match.setWildcards(match.getWildcardObj().matchOn(Flag.IN_PORT));
+		flow.setMatch(match);
+		List<OFAction> actions = new ArrayList<OFAction>();
+		OFActionVirtualLanIdentifier setVid = new OFActionVirtualLanIdentifier();
+		setVid.setVirtualLanIdentifier((short)103);
+		OFActionOutput output = new OFActionOutput();
+		output.setPort((short)2);
+		actions.add(setVid);
+		actions.add(output);
+		flow.setActions(actions);
+		
+		List <OFFlowMod> flows = slicer.allowedFlows(flow);
+		assertTrue("flow was denied", flows.size() == 0);
+		assertEquals("first lookup was a miss", 1, slicer.getFlowCacheMisses());
+		assertEquals("no hits yet", 0, slicer.getFlowCacheHits());
+		
+		flows = slicer.allowedFlows(flow);
+		assertTrue("flow is still denied", flows.size() == 0);
+		assertEquals("second lookup was a hit", 1, slicer.getFlowCacheHits());
+		
+		//allow vlan 103 on port 2, the cached deny has to go away
+		VLANRange range = new VLANRange();
+		range.setVlanAvail((short)103, true);
+		pConfig2.setVLANRange(range);
+		slicer.setPortConfig("foo2", pConfig2);
+		
+		flows = slicer.allowedFlows(flow);
+		assertTrue("flow is allowed after the config changed", flows.size() == 1);
+		assertEquals("lookup after the config changed was a miss", 2, slicer.getFlowCacheMisses());
+		
+		flows = slicer.allowedFlows(flow);
+		assertTrue("cached allow still returns the flow", flows.size() == 1);
+		assertEquals("flow was allowed and matches", flow, flows.get(0));
+		assertEquals("cached allow was a hit", 2, slicer.getFlowCacheHits());
+	}
+	
+	/**
+	 * tests that an error expanding a wildcarded in_port denies the
+	 * flow and that no verdict is cached for it
+	 */
+	@Test
+	public void testFlowVerdictNotCachedOnError(){
+		OFFlowMod flow = new OFFlowMod();
+		OFMatch match = new OFMatch();
+		match.setDataLayerVirtualLan((short)1000);
+		match.setWildcards(match.getWildcardObj().matchOn(Flag.DL_VLAN));
+		flow.setMatch(match);
+		List<OFAction> actions = new ArrayList<OFAction>();
+		OFActionOutput output = new OFActionOutput();
+		output.setPort((short)1);
+		actions.add(output);
+		flow.setActions(actions);
+		
+		List <OFFlowMod> flows = slicer.allowedFlows(flow);
+		assertEquals("expanded to every configured port", 5, flows.size());
+		
+		PortConfig broken = new PortConfig(){
+			@Override
+			public boolean vlanAllowed(short vlanId){
+				throw new IllegalStateException("broken port config");
+			}
+		};
+		broken.setPortName("foo3");
+		broken.setVLANRange(pConfig3.getVlanRange());
+		slicer.setPortConfig("foo3", broken);
+		long misses = slicer.getFlowCacheMisses();
+		
+		flows = slicer.allowedFlows(flow);
+		assertEquals("a port that can't be checked denies the flow", 0, flows.size());
+		flows = slicer.allowedFlows(flow);
+		assertEquals("still denied", 0, flows.size());
+		assertEquals("no verdict was cached", misses + 2, slicer.getFlowCacheMisses());
+		
+		slicer.setPortConfig("foo3", pConfig3);
+		flows = slicer.allowedFlows(flow);
+		assertEquals("allowed once the port can be checked", 5, flows.size());
+	}
+	
 	/**
 	 *  tests isFlowModAllowed for STRIP_VLAN Actions, first without -1 as an available vlan, then adding the -1,-1 range to the output port config.
 	 */
@@ -946,4 +1073,104 @@ public class VLANSlicerTest {
 	}
 	
 	
+	/**
+	 * tests that managed OUTPUT:ALL packet outs going out with the
+	 * same tag share one tagged packet
+	 */
+	@Test
+	public void testPacketOutALLManagedSharedTemplate(){
+		OFPacketOut out = new OFPacketOut();
+		List<OFAction> actions = new ArrayList<OFAction>();
+		OFActionOutput output = new OFActionOutput();
+		output.setType(OFActionType.OUTPUT);
+		output.setPort(OFPort.OFPP_ALL.getValue());
+		actions.add(output);
+		out.setActions(actions);
+		
+		Ethernet pkt = new Ethernet();
+		pkt.setDestinationMACAddress("aa:bb:cc:dd:ee:ff");
+		pkt.setSourceMACAddress("ff:ee:dd:cc:bb:aa");
+		pkt.setEtherType((short)35021);
+		pkt.setPad(true);
+		byte[] data = pkt.serialize();
+		out.setPacketData(data);
+		slicer.setTagManagement(true);
+		
+		List<OFMessage> outPackets = slicer.managedPacketOut(out);
+		assertEquals("one packet out per port", 5, outPackets.size());
+		HashMap<Short, byte[]> seen = new HashMap<Short, byte[]>();
+		for(OFMessage msg : outPackets){
+			OFPacketOut pktOut = (OFPacketOut) msg;
+			OFActionOutput outPort = (OFActionOutput) pktOut.getActions().get(0);
+			short tag = slicer.getPortConfig(outPort.getPort()).getVlanRange().getAvailableTags()[0];
+			assertEquals("packet tagged for its port", tag, PacketHeader.getVlanId(pktOut.getPacketData()));
+			assertEquals("length matches", OFPacketOut.MINIMUM_LENGTH + pktOut.getPacketData().length + OFActionOutput.MINIMUM_LENGTH, pktOut.getLengthU());
+			if(seen.containsKey(tag)){
+				assertSame("same tag shares one packet", seen.get(tag), pktOut.getPacketData());
+			}
+			seen.put(tag, pktOut.getPacketData());
+		}
+		assertTrue("ports share a tag", seen.size() < outPackets.size());
+		assertTrue("original packet untouched", Arrays.equals(data, out.getPacketData()));
+	}
+	
+	/**
+	 * tests that managed OUTPUT:ALL flows only set each egress tag once
+	 */
+	@Test
+	public void testManagedFlowModALLCompacted(){
+		VLANSlicer otherSlicer = new VLANSlicer();
+		otherSlicer.setTagManagement(true);
+		String[] ports = {"foo", "foo2", "foo3", "foo5", "foo6"};
+		short[] tags = {101, 102, 101, 102, 101};
+		for(int i = 0; i < ports.length; i++){
+			PortConfig cfg = new PortConfig();
+			cfg.setPortName(ports[i]);
+			VLANRange range = new VLANRange();
+			range.setVlanAvail(tags[i], true);
+			cfg.setVLANRange(range);
+			otherSlicer.setPortConfig(ports[i], cfg);
+		}
+		otherSlicer.setSwitch(sw);
+		
+		OFFlowMod flowMod = new OFFlowMod();
+		OFMatch match = new OFMatch();
+		match.setInputPort((short)3);
+		match.setWildcards(match.getWildcardObj().matchOn(Flag.IN_PORT));
+		flowMod.setMatch(match);
+		List<OFAction> actions = new ArrayList<OFAction>();
+		OFActionOutput out = new OFActionOutput();
+		out.setPort(OFPort.OFPP_ALL.getValue());
+		actions.add(out);
+		flowMod.setActions(actions);
+		flowMod.setLength((short)(OFFlowMod.MINIMUM_LENGTH + OFActionOutput.MINIMUM_LENGTH));
+		
+		List<OFFlowMod> managedFlows = otherSlicer.managedFlows(flowMod);
+		assertEquals(1, managedFlows.size());
+		OFFlowMod processedFlow = managedFlows.get(0);
+		List<OFAction> processedActions = processedFlow.getActions();
+		assertEquals("one tag action per egress tag plus one output per port", 7, processedActions.size());
+		
+		//every port gets the packet with its own tag
+		HashMap<Short, Short> egress = new HashMap<Short, Short>();
+		short currentTag = 0;
+		int length = 0;
+		for(OFAction act : processedActions){
+			length += act.getLengthU();
+			if(act.getType() == OFActionType.SET_VLAN_ID){
+				currentTag = ((OFActionVirtualLanIdentifier)act).getVirtualLanIdentifier();
+			}else{
+				assertEquals(OFActionType.OUTPUT, act.getType());
+				egress.put(((OFActionOutput)act).getPort(), currentTag);
+			}
+		}
+		assertEquals("5 ports", 5, egress.size());
+		assertEquals(101, (short)egress.get((short)1));
+		assertEquals(102, (short)egress.get((short)2));
+		assertEquals(101, (short)egress.get((short)3));
+		assertEquals(102, (short)egress.get((short)5));
+		assertEquals(101, (short)egress.get((short)59590));
+		assertEquals("length matches actions", OFFlowMod.MINIMUM_LENGTH + length, processedFlow.getLengthU());
+	}
+	
 }
@@ -18,6 +18,8 @@ package edu.iu.grnoc.flowspace_firewall;
 
 import static org.junit.Assert.*;
 
+import java.util.NoSuchElementException;
+
 import org.junit.Test;
 
 import org.junit.Rule;
@@ -133,4 +135,109 @@ public class XidMapTest {
 		assertTrue("does contain 1999", mapper.containsKey(1999));
 	}
 	
+	@Test
+	public void testXidMissing(){
+		XidMap mapper = new XidMap();
+		mapper.put(1, 100);
+		assertFalse("removeToKey of unknown key", mapper.removeToKey(2));
+		assertTrue("contains 1", mapper.containsKey(1));
+		thrown.expect(NoSuchElementException.class);
+		mapper.get(2);
+	}
+	
+	@Test
+	public void testXidRemoveMissing(){
+		XidMap mapper = new XidMap();
+		mapper.put(1, 100);
+		assertTrue("removed 1", mapper.remove(1) == 100);
+		thrown.expect(NoSuchElementException.class);
+		mapper.remove(1);
+	}
+	
+	@Test
+	public void testXidPutExisting(){
+		XidMap mapper = new XidMap();
+		mapper.put(1, 100);
+		mapper.put(2, 200);
+		mapper.put(1, 101);
+		assertTrue("1 == 101", mapper.get(1) == 101);
+		//1 keeps its original place in line
+		assertTrue("removed to key 1", mapper.removeToKey(1));
+		assertFalse("key 1 removed", mapper.containsKey(1));
+		assertTrue("contains 2", mapper.containsKey(2));
+	}
+	
+	@Test
+	public void testXidStride(){
+		//several slices share the switch xid space so each sees every nth xid
+		XidMap mapper = new XidMap();
+		for(int i=0;i<998;i++){
+			mapper.put(100000 + (i * 7), i);
+		}
+		for(int i=0;i<998;i++){
+			assertTrue("contains " + i, mapper.containsKey(100000 + (i * 7)));
+			assertTrue("value " + i, mapper.get(100000 + (i * 7)) == i);
+		}
+		assertTrue("removed to key", mapper.removeToKey(100000 + (499 * 7)));
+		assertFalse("key 0 removed", mapper.containsKey(100000));
+		assertFalse("key 499 removed", mapper.containsKey(100000 + (499 * 7)));
+		assertTrue("contains 500", mapper.containsKey(100000 + (500 * 7)));
+	}
+	
+	@Test
+	public void testXidSentTime(){
+		XidMap mapper = new XidMap();
+		mapper.put(1, 100, 14, 123456789L);
+		mapper.put(2, 200);
+		assertTrue("1 == 100", mapper.get(1) == 100);
+		assertEquals("type kept", 14, mapper.getType(1));
+		assertEquals("sent time kept", 123456789L, mapper.getSentTime(1));
+		assertEquals("no sent time", 0, mapper.getSentTime(2));
+		mapper.put(1, 101, 18, 987654321L);
+		assertEquals("type updated", 18, mapper.getType(1));
+		assertEquals("sent time updated", 987654321L, mapper.getSentTime(1));
+		mapper.remove(1);
+		thrown.expect(NoSuchElementException.class);
+		mapper.getSentTime(1);
+	}
+	
+	@Test
+	public void testCollidingXidsAreKept(){
+		//999 xids that all hash to the same slot, plus one more
+		int[] colliding = new int[1000];
+		int found = 0;
+		for(int key = 1; found < colliding.length; key++){
+			if(XidMap.hash(key) == XidMap.hash(0)){
+				colliding[found++] = key;
+			}
+		}
+		XidMap mapper = new XidMap();
+		for(int i = 0; i < 999; i++){
+			mapper.put(colliding[i], i);
+		}
+		for(int i = 0; i < 999; i++){
+			assertEquals("every xid in the window is kept", i, mapper.get(colliding[i]));
+		}
+		assertTrue("probe distance grew", mapper.getMaxProbe() > 8);
+		
+		mapper.put(colliding[999], 999);
+		assertFalse("only the oldest falls out of the window", mapper.containsKey(colliding[0]));
+		for(int i = 1; i < 1000; i++){
+			assertEquals(i, mapper.get(colliding[i]));
+		}
+		assertEquals(1, mapper.remove(colliding[1]));
+		assertFalse(mapper.containsKey(colliding[1]));
+		assertTrue(mapper.removeToKey(colliding[500]));
+		assertFalse(mapper.containsKey(colliding[500]));
+		assertEquals(501, mapper.get(colliding[501]));
+	}
+	
+	@Test
+	public void testSpreadXidsKeepShortProbes(){
+		XidMap mapper = new XidMap();
+		for(int i = 0; i < 5000; i++){
+			mapper.put(i, i);
+		}
+		assertEquals("sequential xids don't collide", 8, mapper.getMaxProbe());
+	}
 }